@@ -1,16 +1,23 @@
 package lu.crx.financing;
 
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.services.FinancingPlanner;
 import lu.crx.financing.services.FinancingService;
 import lu.crx.financing.services.SeedingService;
+import org.springframework.boot.ApplicationRunner;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Profile;
 
-import static lu.crx.financing.services.FinancingService.QueryMode.QUERY_FOR_LOWEST_RATE;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
 
+@Slf4j
 @SpringBootApplication
+@ConfigurationPropertiesScan
 public class AssignmentFinancingApplication {
 
     public static void main(String[] args) {
@@ -18,10 +25,10 @@ public class AssignmentFinancingApplication {
     }
 
     @Bean
-    @Profile("!test")
+    @Profile("!test & !batch")
     public CommandLineRunner run(
             SeedingService seedingService,
-            FinancingService financingService) {
+            FinancingPlanner financingPlanner) {
 
         return args -> {
             // seeding master data - creditors, debtors and purchasers
@@ -30,8 +37,32 @@ public class AssignmentFinancingApplication {
             // seeding the invoices
             seedingService.seedInvoices();
 
-            // running the financing
-            financingService.finance(QUERY_FOR_LOWEST_RATE);
+            // running the financing in the mode planned from the seeded invoices
+            financingPlanner.finance();
+        };
+    }
+
+    /**
+     * One-shot financing of the {@link FinancingBatchApplication}, without seeding.
+     * The query mode is the first argument, chosen by the {@link FinancingPlanner} by default.
+     */
+    @Bean
+    @Profile("batch")
+    public ApplicationRunner batchRun(FinancingService financingService, FinancingPlanner financingPlanner) {
+
+        return args -> {
+            var startup = ManagementFactory.getRuntimeMXBean().getUptime();
+            log.info("Financing batch started in {} ms", startup);
+
+            var started = System.nanoTime();
+            if (args.getNonOptionArgs().isEmpty()) {
+                financingPlanner.finance();
+            } else {
+                financingService.finance(FinancingService.QueryMode.valueOf(args.getNonOptionArgs().getFirst()));
+            }
+
+            log.info("Financing batch completed, startup: {} ms, financing: {} ms", startup,
+                    Duration.ofNanos(System.nanoTime() - started).toMillis());
         };
     }
 
@@ -0,0 +1,27 @@
+package lu.crx.financing;
+
+import org.springframework.boot.Banner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+
+/**
+ * Lean entry point for short one-shot financing runs, e.g. driven by cron.
+ * <p>
+ * It starts the application with the {@code batch} profile: no seeding, lazily initialised beans and no JMX, so that
+ * only the beans needed by the financing are created. Built with {@code mvn package -Pbatch}, the context is AOT
+ * processed and a class data sharing archive is generated by a training run, see the README.
+ */
+public class FinancingBatchApplication {
+
+    public static void main(String[] args) {
+        var context = new SpringApplicationBuilder(AssignmentFinancingApplication.class)
+                .profiles("batch")
+                .web(WebApplicationType.NONE)
+                .bannerMode(Banner.Mode.OFF)
+                .logStartupInfo(false)
+                .run(args);
+
+        System.exit(SpringApplication.exit(context));
+    }
+}
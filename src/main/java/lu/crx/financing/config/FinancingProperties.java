@@ -0,0 +1,216 @@
+package lu.crx.financing.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lu.crx.financing.services.FinancingService;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Configuration of the financing, bound from the {@code financing.*} application properties.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "financing")
+public class FinancingProperties {
+
+    /**
+     * Number of invoices claimed and persisted together.
+     */
+    private int chunkSize = 1000;
+
+    private Export export = new Export();
+
+    private Partition partition = new Partition();
+
+    private Archive archive = new Archive();
+
+    private BoundedMemory boundedMemory = new BoundedMemory();
+
+    private Pipeline pipeline = new Pipeline();
+
+    private Selection selection = new Selection();
+
+    private Forecast forecast = new Forecast();
+
+    private InvoiceImport invoiceImport = new InvoiceImport();
+
+    private Planner planner = new Planner();
+
+    @Getter
+    @Setter
+    public static class Export {
+
+        /**
+         * Number of financing rows fetched per keyset page by the export.
+         */
+        private int pageSize = 1000;
+    }
+
+    @Getter
+    @Setter
+    public static class Partition {
+
+        /**
+         * Number of financing rows moved to a monthly partition per transaction.
+         */
+        private int batchSize = 10000;
+    }
+
+    @Getter
+    @Setter
+    public static class Archive {
+
+        /**
+         * Number of matured invoices moved to the archive per transaction.
+         */
+        private int batchSize = 5000;
+
+        /**
+         * Pause between two batches when the archival is throttled to run alongside the financing.
+         */
+        private Duration throttlePause = Duration.ofMillis(200);
+    }
+
+    @Getter
+    @Setter
+    public static class BoundedMemory {
+
+        /**
+         * Heap the financing candidates may take in the bounded-memory mode, beyond it they are spilled to disk.
+         */
+        private DataSize heapBudget = DataSize.ofMegabytes(64);
+    }
+
+    @Getter
+    @Setter
+    public static class Pipeline {
+
+        /**
+         * Number of chunks queued between two stages of the pipelined mode before the faster stage blocks.
+         */
+        private int queueCapacity = 4;
+    }
+
+    @Getter
+    @Setter
+    public static class Selection {
+
+        /**
+         * Whether the in-memory selection of the purchasers uses the Vector API, it falls back to a scalar loop
+         * anyway when the JVM runs without {@code --add-modules jdk.incubator.vector}.
+         */
+        private boolean vectorized = true;
+    }
+
+    @Getter
+    @Setter
+    public static class Forecast {
+
+        /**
+         * Number of financing dates forecast by default, starting today.
+         */
+        private int days = 30;
+    }
+
+    @Getter
+    @Setter
+    public static class InvoiceImport {
+
+        /**
+         * Number of imported invoices inserted per JDBC batch and transaction.
+         */
+        private int batchSize = 5000;
+
+        /**
+         * Size of the read buffer of the CSV files, also the longest line accepted.
+         */
+        private DataSize bufferSize = DataSize.ofKilobytes(256);
+
+        /**
+         * Number of rejected rows reported with their errors, the further ones are only counted.
+         */
+        private int maxReportedErrors = 1000;
+    }
+
+    @Getter
+    @Setter
+    public static class Planner {
+
+        /**
+         * Smallest chunk size the planner picks, below it the overhead of the chunks dominates.
+         */
+        private int minChunkSize = 100;
+
+        /**
+         * Largest chunk size the planner picks, larger chunks are not faster and hold more locks and entities.
+         */
+        private int maxChunkSize = 1000;
+
+        /**
+         * Cost model of the query modes the planner picks from, calibrated with the FinancingServicePerformanceTest.
+         * The coefficients of a mode are overridden together, the ones left out are zero, the modes left out keep their
+         * default coefficients.
+         */
+        private Map<FinancingService.QueryMode, Cost> costs = defaultCosts();
+
+        private static Map<FinancingService.QueryMode, Cost> defaultCosts() {
+            var costs = new EnumMap<FinancingService.QueryMode, Cost>(FinancingService.QueryMode.class);
+            costs.put(FinancingService.QueryMode.QUERY_FOR_ALL, new Cost(Duration.ofMillis(4000),
+                    Duration.ofNanos(800_000), Duration.ofNanos(30_000), Duration.ZERO, Duration.ofMillis(15)));
+            costs.put(FinancingService.QueryMode.QUERY_FOR_LOWEST_RATE, new Cost(Duration.ofMillis(900),
+                    Duration.ofNanos(700_000), Duration.ofNanos(1_500), Duration.ZERO, Duration.ofMillis(15)));
+            costs.put(FinancingService.QueryMode.QUERY_FOR_ALL_BOUNDED_MEMORY, new Cost(Duration.ofMillis(1500),
+                    Duration.ofNanos(400_000), Duration.ofNanos(22_000), Duration.ZERO, Duration.ofMillis(15)));
+            costs.put(FinancingService.QueryMode.QUERY_FOR_EQUIVALENCE_CLASSES, new Cost(Duration.ofMillis(100),
+                    Duration.ofNanos(700_000), Duration.ZERO, Duration.ofNanos(1_200_000), Duration.ofMillis(15)));
+            costs.put(FinancingService.QueryMode.QUERY_FOR_ALL_PIPELINED, new Cost(Duration.ofMillis(800),
+                    Duration.ofNanos(200_000), Duration.ofNanos(17_000), Duration.ZERO, Duration.ofMillis(15)));
+            costs.put(FinancingService.QueryMode.QUERY_FOR_LOWEST_RATE_IN_MEMORY, new Cost(Duration.ofMillis(1500),
+                    Duration.ofNanos(250_000), Duration.ofNanos(2_000), Duration.ZERO, Duration.ofMillis(15)));
+            return costs;
+        }
+    }
+
+    /**
+     * Linear cost model of a query mode, the estimated duration of a run is the sum of the coefficients multiplied
+     * by the statistics of the invoices to finance.
+     */
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Cost {
+
+        /**
+         * Duration of a run without invoices to finance.
+         */
+        private Duration fixed = Duration.ZERO;
+
+        /**
+         * Per unfinanced invoice eligible today.
+         */
+        private Duration perInvoice = Duration.ZERO;
+
+        /**
+         * Per unfinanced invoice and financing setting of its creditor.
+         */
+        private Duration perCandidate = Duration.ZERO;
+
+        /**
+         * Per distinct creditor and maturity date of the unfinanced invoices.
+         */
+        private Duration perEquivalenceClass = Duration.ZERO;
+
+        /**
+         * Per chunk of invoices claimed and persisted together.
+         */
+        private Duration perChunk = Duration.ZERO;
+    }
+}
@@ -0,0 +1,16 @@
+package lu.crx.financing.dtos;
+
+import java.time.LocalDate;
+
+/**
+ * Financing totals of a single purchaser or creditor on a single financing date.
+ *
+ * @param ownerId                    id of the purchaser or the creditor
+ * @param financingDate              date of the financing
+ * @param invoiceCount               number of financed invoices
+ * @param earlyPaymentAmountInCents  total early payment amount
+ * @param averageFinancingRateInBps  average financing rate applied
+ */
+public record DailyFinancingAggregate(long ownerId, LocalDate financingDate, long invoiceCount,
+                                      long earlyPaymentAmountInCents, double averageFinancingRateInBps) {
+}
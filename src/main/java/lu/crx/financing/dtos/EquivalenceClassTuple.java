@@ -0,0 +1,24 @@
+package lu.crx.financing.dtos;
+
+import java.time.LocalDate;
+
+/**
+ * Interface defining values returned by InvoiceRepository#findWinnersOfEquivalenceClasses: the purchaser financing all
+ * the unfinanced invoices of a creditor maturing on the same day.
+ */
+public interface EquivalenceClassTuple {
+
+    Long getCreditorId();
+
+    LocalDate getMaturityDate();
+
+    Long getInvoiceCount();
+
+    Long getPurchaserId();
+
+    Integer getDaysToFinance();
+
+    Integer getAnnualRateInBps();
+
+    Float getFinancingRate();
+}
@@ -0,0 +1,50 @@
+package lu.crx.financing.dtos;
+
+/**
+ * Compact copy of an {@link InvoiceTuple} with primitive fields, held by the bounded-memory financing
+ * and spilled to disk when its heap budget is exceeded.
+ */
+public record FinancingCandidate(long invoiceId, long purchaserId, int daysToFinance, float financingRate,
+                                 long earlyPaymentAmount) implements InvoiceTuple {
+
+    /**
+     * Approximate retained heap size of a candidate: object header, fields and the reference holding it.
+     */
+    public static final int ESTIMATED_SIZE_IN_BYTES = 56;
+
+    /**
+     * @return the tuple itself when it is a candidate already, candidates are immutable
+     */
+    public static FinancingCandidate of(InvoiceTuple tuple) {
+        if (tuple instanceof FinancingCandidate candidate) {
+            return candidate;
+        }
+        return new FinancingCandidate(tuple.getInvoiceId(), tuple.getPurchaserId(), tuple.getDaysToFinance(),
+                tuple.getFinancingRate(), tuple.getEarlyPaymentAmount());
+    }
+
+    @Override
+    public Long getInvoiceId() {
+        return invoiceId;
+    }
+
+    @Override
+    public Long getPurchaserId() {
+        return purchaserId;
+    }
+
+    @Override
+    public Integer getDaysToFinance() {
+        return daysToFinance;
+    }
+
+    @Override
+    public Float getFinancingRate() {
+        return financingRate;
+    }
+
+    @Override
+    public Long getEarlyPaymentAmount() {
+        return earlyPaymentAmount;
+    }
+}
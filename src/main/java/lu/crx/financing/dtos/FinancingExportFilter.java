@@ -0,0 +1,19 @@
+package lu.crx.financing.dtos;
+
+import java.time.LocalDate;
+
+/**
+ * Filter of the financing export, null values are not applied.
+ *
+ * @param purchaserId only financing provided by this purchaser
+ * @param creditorId  only financing of invoices issued by this creditor
+ * @param runId       only financing created by this financing run
+ * @param from        only financing with financing date on or after this date
+ * @param to          only financing with financing date on or before this date
+ */
+public record FinancingExportFilter(Long purchaserId, Long creditorId, Long runId, LocalDate from, LocalDate to) {
+
+    public static FinancingExportFilter none() {
+        return new FinancingExportFilter(null, null, null, null, null);
+    }
+}
@@ -0,0 +1,43 @@
+package lu.crx.financing.dtos;
+
+/**
+ * {@link FinancingExportTuple} read by plain JDBC, e.g. from the financing partition tables.
+ */
+public record FinancingExportRow(long financingId, long invoiceId, long creditorId, long purchaserId,
+                                 int daysToFinance, float financingRate, long earlyPaymentAmount) implements FinancingExportTuple {
+
+    @Override
+    public Long getFinancingId() {
+        return financingId;
+    }
+
+    @Override
+    public Long getInvoiceId() {
+        return invoiceId;
+    }
+
+    @Override
+    public Long getCreditorId() {
+        return creditorId;
+    }
+
+    @Override
+    public Long getPurchaserId() {
+        return purchaserId;
+    }
+
+    @Override
+    public Integer getDaysToFinance() {
+        return daysToFinance;
+    }
+
+    @Override
+    public Float getFinancingRate() {
+        return financingRate;
+    }
+
+    @Override
+    public Long getEarlyPaymentAmount() {
+        return earlyPaymentAmount;
+    }
+}
@@ -0,0 +1,21 @@
+package lu.crx.financing.dtos;
+
+/**
+ * Interface defining values returned by the FinancingRepository export query
+ */
+public interface FinancingExportTuple {
+
+    Long getFinancingId();
+
+    Long getInvoiceId();
+
+    Long getCreditorId();
+
+    Long getPurchaserId();
+
+    Integer getDaysToFinance();
+
+    Float getFinancingRate();
+
+    Long getEarlyPaymentAmount();
+}
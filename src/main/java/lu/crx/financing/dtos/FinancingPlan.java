@@ -0,0 +1,19 @@
+package lu.crx.financing.dtos;
+
+import lu.crx.financing.services.FinancingService;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Execution strategy of a financing run chosen by the {@code FinancingPlanner}.
+ *
+ * @param mode              query mode with the lowest estimated duration
+ * @param chunkSize         number of invoices claimed and persisted together
+ * @param estimatedDuration estimated duration of the run in that mode
+ * @param estimates         estimated durations of all the modes considered
+ * @param statistics        statistics the estimates are based on
+ */
+public record FinancingPlan(FinancingService.QueryMode mode, int chunkSize, Duration estimatedDuration,
+                            Map<FinancingService.QueryMode, Duration> estimates, FinancingStatistics statistics) {
+}
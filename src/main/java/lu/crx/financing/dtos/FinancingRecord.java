@@ -0,0 +1,10 @@
+package lu.crx.financing.dtos;
+
+import java.time.LocalDate;
+
+/**
+ * Financing read from wherever it is stored: the financing table, a monthly partition or the archive.
+ */
+public record FinancingRecord(long id, long purchaserId, Long runId, LocalDate financingDate, int daysToFinance,
+                              float financingRateInBps, long earlyPaymentAmountInCents) {
+}
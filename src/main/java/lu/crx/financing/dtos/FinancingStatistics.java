@@ -0,0 +1,37 @@
+package lu.crx.financing.dtos;
+
+/**
+ * Statistics of the invoices to finance, gathered by the {@code FinancingPlanner} before a run.
+ *
+ * @param unfinancedInvoices number of invoices not financed and eligible today
+ * @param creditors          number of creditors of these invoices
+ * @param purchaserSettings  number of financing settings of these creditors
+ * @param maturityDates      number of distinct maturity dates of these invoices
+ * @param equivalenceClasses number of distinct creditors and maturity dates of these invoices
+ * @param invoices           number of all invoices, financed or not
+ */
+public record FinancingStatistics(long unfinancedInvoices, long creditors, long purchaserSettings, long maturityDates,
+                                  long equivalenceClasses, long invoices) {
+
+    /**
+     * Average number of purchasers a creditor of the unfinanced invoices has financing settings with.
+     */
+    public double averageSettingsPerCreditor() {
+        return creditors == 0 ? 0 : (double) purchaserSettings / creditors;
+    }
+
+    /**
+     * Number of (invoice, purchaser) pairs the purchasers are selected from.
+     */
+    public double candidates() {
+        return unfinancedInvoices * averageSettingsPerCreditor();
+    }
+
+    /**
+     * Number of invoices financed or not eligible today, the history the queries skip. Logged with the plan but not
+     * part of the cost model, the benchmarks showed no effect of the history on the duration of the runs.
+     */
+    public long financedInvoices() {
+        return invoices - unfinancedInvoices;
+    }
+}
@@ -0,0 +1,10 @@
+package lu.crx.financing.dtos;
+
+/**
+ * Row of an imported CSV file rejected by the validation.
+ *
+ * @param lineNumber number of the line in the file, starting at 1 with the header
+ * @param message    reason of the rejection
+ */
+public record InvoiceImportError(long lineNumber, String message) {
+}
@@ -0,0 +1,13 @@
+package lu.crx.financing.dtos;
+
+import java.util.List;
+
+/**
+ * Outcome of the import of a CSV file of invoices.
+ *
+ * @param importedInvoices number of inserted invoices
+ * @param rejectedRows     number of rows rejected by the validation
+ * @param errors           errors of the first rejected rows, up to {@code financing.invoice-import.max-reported-errors}
+ */
+public record InvoiceImportResult(long importedInvoices, long rejectedRows, List<InvoiceImportError> errors) {
+}
@@ -0,0 +1,13 @@
+package lu.crx.financing.dtos;
+
+import java.time.LocalDate;
+
+/**
+ * Invoice read from the invoice table or from the archive.
+ *
+ * @param archived  true when the invoice has been moved to the archive
+ * @param financing financing of the invoice, null when the invoice hasn't been financed
+ */
+public record InvoiceRecord(long id, long creditorId, Long debtorId, LocalDate maturityDate, long valueInCents,
+                            boolean archived, FinancingRecord financing) {
+}
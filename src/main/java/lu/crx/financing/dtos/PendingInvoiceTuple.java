@@ -0,0 +1,18 @@
+package lu.crx.financing.dtos;
+
+/**
+ * Interface defining values returned by InvoiceRepository#findNotFinancedForSelection: an unfinanced invoice with
+ * the terms of its creditor, the purchaser financing it is selected in memory.
+ */
+public interface PendingInvoiceTuple {
+
+    Long getInvoiceId();
+
+    Long getCreditorId();
+
+    Long getValueInCents();
+
+    Integer getMaxFinancingRateInBps();
+
+    Integer getDaysToFinance();
+}
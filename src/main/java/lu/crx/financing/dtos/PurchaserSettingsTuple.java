@@ -0,0 +1,16 @@
+package lu.crx.financing.dtos;
+
+/**
+ * Interface defining values returned by PurchaserRepository#findSettingsOrderedByRate: the financing settings
+ * of a purchaser for a creditor, with the minimum financing term of the purchaser.
+ */
+public interface PurchaserSettingsTuple {
+
+    Long getCreditorId();
+
+    Long getPurchaserId();
+
+    Integer getAnnualRateInBps();
+
+    Integer getMinimumFinancingTermInDays();
+}
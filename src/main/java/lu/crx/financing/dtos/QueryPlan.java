@@ -0,0 +1,125 @@
+package lu.crx.financing.dtos;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Execution plan of a native query, as returned by H2 {@code EXPLAIN ANALYZE}, together with the table accesses
+ * extracted from it. A plan reading a table in a form the parser does not know is rejected rather than stored with
+ * the access missing.
+ *
+ * @param queryName      name of the repository method declaring the query
+ * @param plan           plan text as returned by the database
+ * @param tableAccesses  table accesses in the order they appear in the plan
+ */
+public record QueryPlan(String queryName, String plan, List<TableAccess> tableAccesses) {
+
+    private static final String TABLE_CLAUSE = "^\\s*(?:FROM|(?:(?:INNER|CROSS|NATURAL|(?:LEFT|RIGHT|FULL) OUTER) )?JOIN)\\s+";
+
+    /*
+    The alias may be followed by an index hint of the query, e.g. USE INDEX (PURCHASER_FINANCING_SETTINGS_CREDITOR_RATE_IDX),
+    the index actually used is read from the comment below the line.
+     */
+    private static final Pattern TABLE = Pattern.compile(TABLE_CLAUSE + "PUBLIC\\.(\\w+)\\s+(\\w+)(?:\\s+USE INDEX \\([\\w\\s,]*\\))?\\s*$");
+
+    /*
+    Any other table read in the plan. Derived tables, FROM (, are skipped as their plan follows in a comment, and so is
+    the SQL text of derived tables, repeated with quoted names above their plan.
+     */
+    private static final Pattern TABLE_REFERENCE = Pattern.compile(TABLE_CLAUSE + "[^(\"\\s]");
+
+    private static final Pattern TABLE_SCAN = Pattern.compile("/\\* PUBLIC\\.\\w+\\.tableScan \\*/");
+    private static final Pattern INDEX = Pattern.compile("/\\* PUBLIC\\.(\\w+): ");
+    private static final Pattern SCAN_COUNT = Pattern.compile("/\\* scanCount: (\\d+) \\*/");
+
+    /*
+    Index names generated by H2 end with a sequence number depending on the order the tables were created in,
+    e.g. PRIMARY_KEY_9 or FK..._INDEX_A, the number is dropped so that plans can be compared across databases.
+     */
+    private static final Pattern INDEX_SUFFIX = Pattern.compile("_[0-9A-F]+$");
+
+    public static final String TABLE_SCAN_ACCESS = "tableScan";
+
+    /**
+     * Single access to a table in the query plan.
+     *
+     * @param table      accessed table
+     * @param alias      alias of the table in the query
+     * @param access     name of the index used, or {@link #TABLE_SCAN_ACCESS} for a full table scan
+     * @param scanCount  number of rows scanned, -1 when the plan has not been analyzed
+     */
+    public record TableAccess(String table, String alias, String access, long scanCount) {
+
+        public boolean isTableScan() {
+            return TABLE_SCAN_ACCESS.equals(access);
+        }
+
+        @Override
+        public String toString() {
+            return String.join(" ", table, alias, access, String.valueOf(scanCount));
+        }
+
+        public static TableAccess parse(String line) {
+            var parts = line.trim().split("\\s+");
+            return new TableAccess(parts[0], parts[1], parts[2], Long.parseLong(parts[3]));
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException when the plan reads a table in a line the parser cannot extract the access from
+     */
+    public static QueryPlan parse(String queryName, String plan) {
+        var tableAccesses = new ArrayList<TableAccess>();
+
+        String table = null;
+        String alias = null;
+        String access = null;
+        for (var line : plan.split("\\R")) {
+            var tableMatcher = TABLE.matcher(line);
+            if (tableMatcher.matches()) {
+                if (table != null) {
+                    tableAccesses.add(new TableAccess(table, alias, access, -1));
+                }
+                table = tableMatcher.group(1);
+                alias = tableMatcher.group(2);
+                access = null;
+                continue;
+            }
+            if (TABLE_REFERENCE.matcher(line).lookingAt()) {
+                throw new IllegalArgumentException("Cannot parse table access in plan of " + queryName + ": " + line.trim());
+            }
+            if (table == null) {
+                continue;
+            }
+            if (access == null && TABLE_SCAN.matcher(line).find()) {
+                access = TABLE_SCAN_ACCESS;
+                continue;
+            }
+            var indexMatcher = INDEX.matcher(line);
+            if (access == null && indexMatcher.find()) {
+                access = INDEX_SUFFIX.matcher(indexMatcher.group(1)).replaceFirst("");
+                continue;
+            }
+            var scanCountMatcher = SCAN_COUNT.matcher(line);
+            if (scanCountMatcher.find()) {
+                tableAccesses.add(new TableAccess(table, alias, access, Long.parseLong(scanCountMatcher.group(1))));
+                table = null;
+            }
+        }
+        if (table != null) {
+            tableAccesses.add(new TableAccess(table, alias, access, -1));
+        }
+
+        return new QueryPlan(queryName, plan, List.copyOf(tableAccesses));
+    }
+
+    /**
+     * Table accesses in the format stored in plan baselines, one access per line.
+     */
+    public String toBaseline() {
+        var baseline = new StringBuilder();
+        tableAccesses.forEach(tableAccess -> baseline.append(tableAccess).append(System.lineSeparator()));
+        return baseline.toString();
+    }
+}
@@ -0,0 +1,20 @@
+package lu.crx.financing.dtos;
+
+import java.time.LocalDate;
+
+/**
+ * Interface defining values returned by InvoiceRepository#streamNotFinancedForForecast: an unfinanced invoice with
+ * the maximum financing rate of its creditor, independent of the current date.
+ */
+public interface UnfinancedInvoiceTuple {
+
+    Long getInvoiceId();
+
+    Long getCreditorId();
+
+    Long getValueInCents();
+
+    Integer getMaxFinancingRateInBps();
+
+    LocalDate getMaturityDate();
+}
@@ -0,0 +1,55 @@
+package lu.crx.financing.entities;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+import jakarta.persistence.Basic;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * {@link Financing} of an {@link ArchivedInvoice}, moved out of the financing table together with its invoice.
+ * It has the same columns as the monthly financing partitions.
+ */
+@Entity
+@Table(name = "financing_archive", indexes = @Index(name = "financing_archive_financing_date_idx", columnList = "financing_date"))
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ArchivedFinancing implements Serializable {
+
+    @Id
+    private long id;
+
+    private Long invoiceId;
+
+    private Long creditorId;
+
+    @Basic(optional = false)
+    private long purchaserId;
+
+    private Long runId;
+
+    @Basic(optional = false)
+    private LocalDate financingDate;
+
+    @Basic(optional = false)
+    private int daysToFinance;
+
+    @Basic(optional = false)
+    private long earlyPaymentAmountInCents;
+
+    @Basic(optional = false)
+    private float financingRateInBps;
+}
@@ -0,0 +1,52 @@
+package lu.crx.financing.entities;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+import jakarta.persistence.Basic;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * A matured {@link Invoice} moved out of the invoice table by the archival. The invoice keeps its id, references are
+ * stored as plain ids, so that archived rows don't constrain the master data.
+ */
+@Entity
+@Table(name = "invoice_archive")
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ArchivedInvoice implements Serializable {
+
+    @Id
+    private long id;
+
+    @Basic(optional = false)
+    private long creditorId;
+
+    private Long debtorId;
+
+    /**
+     * Id of the {@link ArchivedFinancing}, or of the financing in a monthly partition, null when never financed.
+     */
+    private Long financingId;
+
+    @Basic(optional = false)
+    private LocalDate maturityDate;
+
+    @Basic(optional = false)
+    private long valueInCents;
+
+    @Basic(optional = false)
+    private LocalDate archivedOn;
+}
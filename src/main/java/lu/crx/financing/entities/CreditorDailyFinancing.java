@@ -0,0 +1,58 @@
+package lu.crx.financing.entities;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * Financing totals of a {@link Creditor} on a single financing date, maintained incrementally by the financing.
+ */
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = {"creditor_id", "financing_date"}))
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CreditorDailyFinancing implements Serializable {
+
+    /*
+    Identity instead of a sequence, the rows are inserted by the MERGE statement in CreditorDailyFinancingRepository.
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private long id;
+
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
+    @ToString.Exclude
+    private Creditor creditor;
+
+    @Basic(optional = false)
+    private LocalDate financingDate;
+
+    /**
+     * Number of invoices financed for the creditor on the financing date.
+     */
+    @Basic(optional = false)
+    private long invoiceCount;
+
+    /**
+     * Total early payment amount paid to the creditor on the financing date.
+     */
+    @Basic(optional = false)
+    private long earlyPaymentAmountInCents;
+
+    /**
+     * Sum of the financing rates applied, divided by {@link #invoiceCount} gives the average rate.
+     */
+    @Basic(optional = false)
+    private double financingRateSumInBps;
+}
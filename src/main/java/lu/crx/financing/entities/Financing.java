@@ -3,10 +3,13 @@ package lu.crx.financing.entities;
 import jakarta.persistence.*;
 import lombok.*;
 
+import java.time.LocalDate;
+
 /**
  * An entity representing invoice financing, created when {@link Purchaser} is financing the {@link Invoice} on behalf of the {@link Debtor}.
  */
 @Entity
+@Table(indexes = @Index(name = "financing_financing_date_idx", columnList = "financing_date"))
 @Getter
 @Setter
 @ToString
@@ -25,6 +28,19 @@ public class Financing {
     @ManyToOne(optional = false)
     private Purchaser purchaser;
 
+    /**
+     * {@link FinancingRun} that created the financing.
+     */
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
+    @ToString.Exclude
+    private FinancingRun run;
+
+    /**
+     * The date on which the financing has occurred.
+     */
+    @Basic(optional = false)
+    private LocalDate financingDate;
+
     /**
      * The value is the early payment amount paid to the {@link Creditor} by {@link Purchaser}.
      */
@@ -0,0 +1,57 @@
+package lu.crx.financing.entities;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+import jakarta.persistence.Basic;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * Catalog entry of a monthly partition table holding the {@link Financing} history of a closed month.
+ * <p>
+ * Partition tables are self-contained, they store the invoice and creditor ids next to the financing columns,
+ * so reading them doesn't need the invoice table.
+ */
+@Entity
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FinancingPartition implements Serializable {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO)
+    private long id;
+
+    /**
+     * First day of the month held by the partition.
+     */
+    @Column(unique = true)
+    @Basic(optional = false)
+    private LocalDate periodStart;
+
+    @Basic(optional = false)
+    private String tableName;
+
+    /**
+     * Number of financing rows moved to the partition.
+     */
+    private long rowCount;
+
+    /**
+     * Detached partitions are no longer read, their table is kept under a {@code _detached} suffix until dropped.
+     */
+    private boolean detached;
+}
@@ -0,0 +1,74 @@
+package lu.crx.financing.entities;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.time.LocalDate;
+
+import jakarta.persistence.Basic;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * A single run of the financing, every {@link Financing} created by the run references it.
+ */
+@Entity
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FinancingRun implements Serializable {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO)
+    private long id;
+
+    /**
+     * Query mode the run was executed with.
+     */
+    @Basic(optional = false)
+    private String mode;
+
+    /**
+     * The financing date of all invoices financed by the run.
+     */
+    @Basic(optional = false)
+    private LocalDate financingDate;
+
+    @Basic(optional = false)
+    private Instant startedAt;
+
+    /**
+     * Null while the run is in progress or when it failed.
+     */
+    private Instant completedAt;
+
+    private int financedInvoices;
+
+    /**
+     * Number of invoices the run claimed and persisted together.
+     */
+    @Column(columnDefinition = "integer default 0 not null")
+    private int chunkSize;
+
+    /**
+     * Invoices selected by the run but claimed by a concurrent run first, they are skipped rather than financed twice.
+     */
+    @Column(columnDefinition = "integer default 0 not null")
+    private int lostRaces;
+
+    /**
+     * Fingerprint of the financing settings the eligibility calendar was computed with by the run.
+     */
+    private String settingsFingerprint;
+}
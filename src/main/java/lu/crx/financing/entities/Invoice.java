@@ -15,6 +15,9 @@ import lombok.ToString;
  * An invoice issued by the {@link Creditor} to the {@link Debtor} for shipped goods.
  */
 @Entity
+@Table(indexes = {
+        @Index(name = "invoice_financing_id_idx", columnList = "financing_id"),
+        @Index(name = "invoice_creditor_maturity_date_idx", columnList = "creditor_id, maturity_date")})
 @Getter
 @Setter
 @ToString
@@ -41,8 +44,15 @@ public class Invoice implements Serializable {
 
     /**
      * Entity representing invoice financing, null when the invoice hasn't been financed yet.
+     * <p>
+     * There is no foreign key constraint, financing of closed months is moved to monthly partition tables
+     * (see {@link FinancingPartition}) while the invoice keeps the id of its financing. The association then refers
+     * to a missing row and initializing it throws {@link EntityNotFoundException}: read the id of the financing only
+     * and resolve it with {@code InvoiceArchiveService.findFinancing}, which looks up the partitions too.
      */
     @ManyToOne(cascade = CascadeType.PERSIST, fetch = FetchType.LAZY)
+    @JoinColumn(foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
+    @ToString.Exclude
     private Financing financing;
 
     /**
@@ -57,4 +67,17 @@ public class Invoice implements Serializable {
      */
     @Basic(optional = false)
     private long valueInCents;
+
+    /**
+     * First day the invoice may be financed under the current financing settings, null until a financing run rejects it.
+     * Invoices scheduled for a later day are not evaluated by the financing.
+     */
+    private LocalDate nextEligibilityDate;
+
+    /**
+     * The invoice can't be financed under the current financing settings, e.g. its term is already shorter than
+     * the minimum financing term of every purchaser.
+     */
+    @Column(columnDefinition = "boolean default false not null")
+    private boolean permanentlyIneligible;
 }
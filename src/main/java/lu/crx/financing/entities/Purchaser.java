@@ -43,6 +43,14 @@ public class Purchaser implements Serializable {
      * The per-creditor settings for financing.
      */
     @Singular
-    @OneToMany(cascade = CascadeType.PERSIST, fetch = FetchType.LAZY)
+    @OneToMany(mappedBy = "purchaser", cascade = CascadeType.PERSIST, fetch = FetchType.LAZY)
     private Set<PurchaserFinancingSettings> purchaserFinancingSettings = new HashSet<>();
+
+    /**
+     * Links the settings added by the builder to this purchaser, they own the relationship.
+     */
+    @PrePersist
+    void linkPurchaserFinancingSettings() {
+        purchaserFinancingSettings.forEach(settings -> settings.setPurchaser(this));
+    }
 }
@@ -3,10 +3,14 @@ package lu.crx.financing.entities;
 import java.io.Serializable;
 import jakarta.persistence.Basic;
 import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Getter;
@@ -16,8 +20,15 @@ import lombok.ToString;
 
 /**
  * Financing settings set by the purchaser for a specific creditor.
+ * <p>
+ * The index on the creditor, the rate and the purchaser lets the financing queries look the cheapest purchasers
+ * of a creditor up in the index order.
  */
 @Entity
+@Table(
+        uniqueConstraints = @UniqueConstraint(columnNames = {"purchaser_id", "creditor_id"}),
+        indexes = @Index(name = "purchaser_financing_settings_creditor_rate_idx",
+                columnList = "creditor_id, annual_rate_in_bps, purchaser_id"))
 @Getter
 @Setter
 @ToString
@@ -30,6 +41,10 @@ public class PurchaserFinancingSettings implements Serializable {
     @GeneratedValue(strategy = GenerationType.AUTO)
     private long id;
 
+    @ToString.Exclude
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
+    private Purchaser purchaser;
+
     @ManyToOne(optional = false)
     private Creditor creditor;
 
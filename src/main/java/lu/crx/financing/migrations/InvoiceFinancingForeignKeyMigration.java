@@ -0,0 +1,55 @@
+package lu.crx.financing.migrations;
+
+import jakarta.annotation.PostConstruct;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.orm.jpa.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Drops the foreign key constraint of {@code invoice.financing_id} created by the schema update before the financing
+ * history was partitioned.
+ * <p>
+ * Invoices keep the id of their financing when it's rolled over to a monthly partition, so the constraint would make
+ * the roll over fail, and the schema update never drops a constraint. The constraint has a name generated by
+ * Hibernate, it's looked up in the information schema. The migration runs before the entity manager factory and does
+ * nothing when there is no such constraint, e.g. for a new database.
+ */
+@Slf4j
+@Component
+@AllArgsConstructor
+public class InvoiceFinancingForeignKeyMigration {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Makes the entity manager factory, and so the schema update, wait for the migration.
+     */
+    @Component
+    static class EntityManagerFactoryDependsOnMigration extends EntityManagerFactoryDependsOnPostProcessor {
+
+        EntityManagerFactoryDependsOnMigration() {
+            super(InvoiceFinancingForeignKeyMigration.class);
+        }
+    }
+
+    @PostConstruct
+    public void migrate() {
+        var constraints = jdbcTemplate.queryForList("""
+                select tc.constraint_name
+                from information_schema.table_constraints tc
+                join information_schema.key_column_usage kcu
+                    on kcu.constraint_schema = tc.constraint_schema
+                        and kcu.constraint_name = tc.constraint_name
+                where tc.table_schema = current_schema
+                    and tc.table_name = 'INVOICE'
+                    and tc.constraint_type = 'FOREIGN KEY'
+                    and kcu.column_name = 'FINANCING_ID'""", String.class);
+
+        for (var constraint : constraints) {
+            jdbcTemplate.execute("alter table invoice drop constraint if exists \"" + constraint + "\"");
+            log.info("Foreign key {} of invoice.financing_id dropped", constraint);
+        }
+    }
+}
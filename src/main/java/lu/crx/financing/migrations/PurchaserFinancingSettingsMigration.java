@@ -0,0 +1,63 @@
+package lu.crx.financing.migrations;
+
+import jakarta.annotation.PostConstruct;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.orm.jpa.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Moves the purchaser of the financing settings from the former {@code purchaser_purchaser_financing_settings} join
+ * table to the {@code purchaser_id} column of {@code purchaser_financing_settings} and drops the join table.
+ * <p>
+ * Hibernate can't add the not null column to a table with rows, so the migration runs before the entity manager
+ * factory updates the schema, which then adds the foreign key, the unique constraint and the index. It does nothing
+ * when the join table doesn't exist. Every statement can be repeated, the join table is dropped last.
+ */
+@Slf4j
+@Component
+@AllArgsConstructor
+public class PurchaserFinancingSettingsMigration {
+
+    static final String JOIN_TABLE = "PURCHASER_PURCHASER_FINANCING_SETTINGS";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Makes the entity manager factory, and so the schema update, wait for the migration.
+     */
+    @Component
+    static class EntityManagerFactoryDependsOnMigration extends EntityManagerFactoryDependsOnPostProcessor {
+
+        EntityManagerFactoryDependsOnMigration() {
+            super(PurchaserFinancingSettingsMigration.class);
+        }
+    }
+
+    @PostConstruct
+    public void migrate() {
+        var joinTables = jdbcTemplate.queryForObject("""
+                select count(*)
+                from information_schema.tables
+                where table_schema = current_schema
+                    and table_name = ?""", Integer.class, JOIN_TABLE);
+        if (joinTables == 0) {
+            return;
+        }
+
+        log.info("Migrating the purchasers of the financing settings from {}", JOIN_TABLE);
+
+        jdbcTemplate.execute("alter table purchaser_financing_settings add column if not exists purchaser_id bigint");
+        var migrated = jdbcTemplate.update("""
+                update purchaser_financing_settings pfs
+                set purchaser_id = (select ppfs.purchaser_id
+                                    from purchaser_purchaser_financing_settings ppfs
+                                    where ppfs.purchaser_financing_settings_id = pfs.id)
+                where purchaser_id is null""");
+        jdbcTemplate.execute("alter table purchaser_financing_settings alter column purchaser_id set not null");
+        jdbcTemplate.execute("drop table " + JOIN_TABLE);
+
+        log.info("{} financing settings migrated, {} dropped", migrated, JOIN_TABLE);
+    }
+}
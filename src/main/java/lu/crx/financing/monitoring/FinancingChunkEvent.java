@@ -0,0 +1,53 @@
+package lu.crx.financing.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import lu.crx.financing.entities.FinancingRun;
+
+/**
+ * Flight Recorder event spanning the persistence of a chunk of financed invoices. The daily totals are updated once
+ * at the end of the run, outside of the chunks, see {@link lu.crx.financing.services.FinancingAggregateService#recordRun}.
+ */
+@Name(FinancingChunkEvent.NAME)
+@Label("Financing Chunk")
+@Category("Financing")
+@Description("Persistence of a chunk of financed invoices, from the claim of the invoices to the flush of their financing")
+@StackTrace(false)
+public class FinancingChunkEvent extends Event {
+
+    public static final String NAME = "lu.crx.financing.Chunk";
+
+    @Label("Run Id")
+    private long runId;
+
+    @Label("Mode")
+    private String mode;
+
+    @Label("Chunk")
+    private int chunk;
+
+    @Label("Rows")
+    private long rows;
+
+    @Label("Financed Invoices")
+    private long financedInvoices;
+
+    public static FinancingChunkEvent start(FinancingRun run, int chunk, int rows) {
+        var event = new FinancingChunkEvent();
+        event.runId = run.getId();
+        event.mode = run.getMode();
+        event.chunk = chunk;
+        event.rows = rows;
+        event.begin();
+        return event;
+    }
+
+    public void complete(long financedInvoices) {
+        this.financedInvoices = financedInvoices;
+        commit();
+    }
+}
@@ -0,0 +1,48 @@
+package lu.crx.financing.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import lu.crx.financing.entities.FinancingRun;
+
+/**
+ * Flight Recorder event spanning a query selecting the invoices to finance, including the reading of its rows.
+ */
+@Name(FinancingQueryEvent.NAME)
+@Label("Financing Query")
+@Category("Financing")
+@Description("Query selecting the invoices to finance, including the reading of its rows")
+@StackTrace(false)
+public class FinancingQueryEvent extends Event {
+
+    public static final String NAME = "lu.crx.financing.Query";
+
+    @Label("Run Id")
+    private long runId;
+
+    @Label("Mode")
+    private String mode;
+
+    @Label("Query")
+    private String query;
+
+    @Label("Rows")
+    private long rows;
+
+    public static FinancingQueryEvent start(FinancingRun run, String query) {
+        var event = new FinancingQueryEvent();
+        event.runId = run.getId();
+        event.mode = run.getMode();
+        event.query = query;
+        event.begin();
+        return event;
+    }
+
+    public void complete(long rows) {
+        this.rows = rows;
+        commit();
+    }
+}
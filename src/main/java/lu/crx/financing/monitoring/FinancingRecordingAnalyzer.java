@@ -0,0 +1,105 @@
+package lu.crx.financing.monitoring;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Summarises the financing events of a Flight Recorder recording into a per-phase breakdown: the runs, every query
+ * selecting the invoices to finance, the persistence of the chunks and the rest of the run time.
+ * <p>
+ * Usage: {@code java -cp target/classes lu.crx.financing.monitoring.FinancingRecordingAnalyzer recording.jfr}
+ */
+public final class FinancingRecordingAnalyzer {
+
+    public static final String RUN_PHASE = "run";
+
+    public static final String QUERY_PHASE_PREFIX = "query ";
+
+    public static final String CHUNK_PHASE = "persist chunks";
+
+    public static final String OTHER_PHASE = "other";
+
+    /**
+     * @param rows sum of the rows of the phase, financed invoices for the runs
+     */
+    public record Phase(String name, long events, long rows, Duration total, Duration max) {
+
+        private Phase add(long rows, Duration duration) {
+            return new Phase(name, events + 1, this.rows + rows, total.plus(duration),
+                    duration.compareTo(max) > 0 ? duration : max);
+        }
+    }
+
+    private FinancingRecordingAnalyzer() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: FinancingRecordingAnalyzer <recording.jfr>");
+            System.exit(1);
+        }
+        print(analyze(Path.of(args[0])), System.out);
+    }
+
+    /**
+     * @return phases in the order of their first event, followed by the time of the runs not covered by the other phases
+     */
+    public static List<Phase> analyze(Path recording) throws IOException {
+        var phases = new LinkedHashMap<String, Phase>();
+
+        try (var file = new RecordingFile(recording)) {
+            while (file.hasMoreEvents()) {
+                var event = file.readEvent();
+                switch (event.getEventType().getName()) {
+                    case FinancingRunEvent.NAME -> add(phases, RUN_PHASE, event.getLong("financedInvoices"), event);
+                    case FinancingQueryEvent.NAME ->
+                            add(phases, QUERY_PHASE_PREFIX + event.getString("query"), event.getLong("rows"), event);
+                    case FinancingChunkEvent.NAME -> add(phases, CHUNK_PHASE, event.getLong("rows"), event);
+                    default -> {
+                    }
+                }
+            }
+        }
+
+        var result = new ArrayList<>(phases.values());
+        var run = phases.get(RUN_PHASE);
+        if (run != null) {
+            var other = result.stream()
+                    .filter(phase -> phase != run)
+                    .map(Phase::total)
+                    .reduce(run.total(), Duration::minus);
+            result.add(new Phase(OTHER_PHASE, run.events(), 0, other.isNegative() ? Duration.ZERO : other, Duration.ZERO));
+        }
+        return result;
+    }
+
+    public static void print(List<Phase> phases, PrintStream out) {
+        var runTotal = phases.stream()
+                .filter(phase -> phase.name().equals(RUN_PHASE))
+                .map(Phase::total)
+                .findFirst()
+                .orElse(Duration.ZERO);
+
+        out.printf("%-50s %8s %12s %12s %12s %7s%n", "phase", "events", "rows", "total ms", "max ms", "share");
+        for (var phase : phases) {
+            var share = runTotal.isZero() || phase.name().equals(RUN_PHASE)
+                    ? "" : "%.1f%%".formatted(100.0 * phase.total().toNanos() / runTotal.toNanos());
+            out.printf("%-50s %8d %12d %12d %12d %7s%n", phase.name(), phase.events(), phase.rows(),
+                    phase.total().toMillis(), phase.max().toMillis(), share);
+        }
+    }
+
+    private static void add(Map<String, Phase> phases, String name, long rows, RecordedEvent event) {
+        phases.merge(name, new Phase(name, 1, rows, event.getDuration(), event.getDuration()),
+                (phase, ignored) -> phase.add(rows, event.getDuration()));
+    }
+}
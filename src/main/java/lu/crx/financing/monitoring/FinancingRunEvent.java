@@ -0,0 +1,44 @@
+package lu.crx.financing.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import lu.crx.financing.entities.FinancingRun;
+
+/**
+ * Flight Recorder event spanning a whole financing run.
+ */
+@Name(FinancingRunEvent.NAME)
+@Label("Financing Run")
+@Category("Financing")
+@Description("Financing of all eligible invoices, from the selection of the invoices to the completion of the run")
+@StackTrace(false)
+public class FinancingRunEvent extends Event {
+
+    public static final String NAME = "lu.crx.financing.Run";
+
+    @Label("Run Id")
+    private long runId;
+
+    @Label("Mode")
+    private String mode;
+
+    @Label("Financed Invoices")
+    private long financedInvoices;
+
+    public static FinancingRunEvent start(String mode) {
+        var event = new FinancingRunEvent();
+        event.mode = mode;
+        event.begin();
+        return event;
+    }
+
+    public void complete(FinancingRun run, long financedInvoices) {
+        this.runId = run.getId();
+        this.financedInvoices = financedInvoices;
+        commit();
+    }
+}
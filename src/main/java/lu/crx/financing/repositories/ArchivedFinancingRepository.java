@@ -0,0 +1,9 @@
+package lu.crx.financing.repositories;
+
+import lu.crx.financing.entities.ArchivedFinancing;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ArchivedFinancingRepository extends JpaRepository<ArchivedFinancing, Long> {
+}
@@ -0,0 +1,60 @@
+package lu.crx.financing.repositories;
+
+import lu.crx.financing.entities.ArchivedInvoice;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface ArchivedInvoiceRepository extends JpaRepository<ArchivedInvoice, Long> {
+
+    @Query(value = """
+        select id
+        from invoice
+        where maturity_date < :maturedBefore
+        order by id
+        limit :batchSize""",
+            nativeQuery = true)
+    List<Long> findMaturedInvoiceIds(@Param("maturedBefore") LocalDate maturedBefore, @Param("batchSize") int batchSize);
+
+    /*
+    Copies the financing of the given invoices still held in the financing table to the archive,
+    financing already rolled over to a monthly partition stays there.
+     */
+    @Modifying
+    @Query(value = """
+        insert into financing_archive (id, invoice_id, creditor_id, purchaser_id, run_id, financing_date, days_to_finance,
+                                       early_payment_amount_in_cents, financing_rate_in_bps)
+        select f.id, i.id, i.creditor_id, f.purchaser_id, f.run_id, f.financing_date, f.days_to_finance,
+               f.early_payment_amount_in_cents, f.financing_rate_in_bps
+        from invoice i
+        join financing f on f.id = i.financing_id
+        where i.id in (:invoiceIds)""",
+            nativeQuery = true)
+    int archiveFinancing(@Param("invoiceIds") List<Long> invoiceIds);
+
+    @Modifying
+    @Query(value = """
+        delete from financing
+        where id in (select financing_id from invoice where id in (:invoiceIds))""",
+            nativeQuery = true)
+    int deleteFinancing(@Param("invoiceIds") List<Long> invoiceIds);
+
+    @Modifying
+    @Query(value = """
+        insert into invoice_archive (id, creditor_id, debtor_id, financing_id, maturity_date, value_in_cents, archived_on)
+        select id, creditor_id, debtor_id, financing_id, maturity_date, value_in_cents, current_date
+        from invoice
+        where id in (:invoiceIds)""",
+            nativeQuery = true)
+    int archiveInvoices(@Param("invoiceIds") List<Long> invoiceIds);
+
+    @Modifying
+    @Query(value = "delete from invoice where id in (:invoiceIds)", nativeQuery = true)
+    int deleteInvoices(@Param("invoiceIds") List<Long> invoiceIds);
+}
@@ -0,0 +1,89 @@
+package lu.crx.financing.repositories;
+
+import lu.crx.financing.dtos.DailyFinancingAggregate;
+import lu.crx.financing.entities.CreditorDailyFinancing;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface CreditorDailyFinancingRepository extends JpaRepository<CreditorDailyFinancing, Long> {
+
+    /*
+    Owners of the financing of a run, read within the transaction of the run.
+     */
+    @Query(value = """
+        select distinct i.creditor_id
+        from financing f
+        join invoice i on i.financing_id = f.id
+        where f.run_id = :runId""",
+            nativeQuery = true)
+    List<Long> findCreditorIdsOfRun(@Param("runId") long runId);
+
+    /*
+    Creates the missing totals of the day of the given creditors with zero totals. Two runs creating the same row would
+    otherwise both insert it and the second one would fail on the unique constraint, so the rows are created ahead
+    of the update, each in a short transaction of its own.
+     */
+    @Modifying
+    @Query(value = """
+        insert into creditor_daily_financing (creditor_id, financing_date, invoice_count, early_payment_amount_in_cents,
+                                              financing_rate_sum_in_bps)
+        select o.id, :financingDate, 0, 0, 0
+        from creditor o
+        where o.id in (:creditorIds)
+            and not exists (select 1
+                            from creditor_daily_financing t
+                            where t.creditor_id = o.id
+                                and t.financing_date = :financingDate)""",
+            nativeQuery = true)
+    int createMissing(@Param("creditorIds") Collection<Long> creditorIds,
+                      @Param("financingDate") LocalDate financingDate);
+
+    /*
+    Adds the totals of all financing of a run to the creditors' totals of the day. The totals missing are inserted
+    as well, unless created ahead by createMissing.
+     */
+    @Modifying
+    @Query(value = """
+        merge into creditor_daily_financing t
+        using (select i.creditor_id,
+                      f.financing_date,
+                      count(*) as invoice_count,
+                      sum(f.early_payment_amount_in_cents) as early_payment_amount_in_cents,
+                      sum(cast(f.financing_rate_in_bps as double precision)) as financing_rate_sum_in_bps
+               from financing f
+               join invoice i on i.financing_id = f.id
+               where f.run_id = :runId
+               group by i.creditor_id,
+                        f.financing_date) s
+        on t.creditor_id = s.creditor_id
+            and t.financing_date = s.financing_date
+        when matched then
+            update set invoice_count = t.invoice_count + s.invoice_count,
+                       early_payment_amount_in_cents = t.early_payment_amount_in_cents + s.early_payment_amount_in_cents,
+                       financing_rate_sum_in_bps = t.financing_rate_sum_in_bps + s.financing_rate_sum_in_bps
+        when not matched then
+            insert (creditor_id, financing_date, invoice_count, early_payment_amount_in_cents, financing_rate_sum_in_bps)
+            values (s.creditor_id, s.financing_date, s.invoice_count, s.early_payment_amount_in_cents, s.financing_rate_sum_in_bps)""",
+            nativeQuery = true)
+    void addRun(@Param("runId") long runId);
+
+    @Query("""
+        select new lu.crx.financing.dtos.DailyFinancingAggregate(a.creditor.id, a.financingDate, a.invoiceCount,
+            a.earlyPaymentAmountInCents, a.financingRateSumInBps / a.invoiceCount)
+        from CreditorDailyFinancing a
+        where (:creditorId is null or a.creditor.id = :creditorId)
+            and a.financingDate between :from and :to
+            and a.invoiceCount > 0
+        order by a.financingDate, a.creditor.id""")
+    List<DailyFinancingAggregate> findAggregates(@Param("creditorId") Long creditorId,
+                                                 @Param("from") LocalDate from,
+                                                 @Param("to") LocalDate to);
+}
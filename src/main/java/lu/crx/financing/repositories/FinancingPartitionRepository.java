@@ -0,0 +1,17 @@
+package lu.crx.financing.repositories;
+
+import lu.crx.financing.entities.FinancingPartition;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface FinancingPartitionRepository extends JpaRepository<FinancingPartition, Long> {
+
+    Optional<FinancingPartition> findByPeriodStart(LocalDate periodStart);
+
+    List<FinancingPartition> findByDetachedFalseAndPeriodStartBetweenOrderByPeriodStart(LocalDate from, LocalDate to);
+}
@@ -0,0 +1,50 @@
+package lu.crx.financing.repositories;
+
+import lu.crx.financing.dtos.FinancingExportTuple;
+import lu.crx.financing.entities.Financing;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface FinancingRepository extends JpaRepository<Financing, Long> {
+
+    /*
+    Query returning a single keyset page of the financing results, ordered by financing id.
+    The next page starts after the last financing id of the previous one, so that the cost of a page doesn't depend on
+    how many rows were exported before.
+
+    Note: Only the current financing is read, financing of closed months is read from its partition tables,
+        see FinancingPartitionService.
+     */
+    @Query(value = """
+        select f.id as financing_id,
+               i.id as invoice_id,
+               i.creditor_id,
+               f.purchaser_id,
+               f.days_to_finance,
+               f.financing_rate_in_bps as financing_rate,
+               f.early_payment_amount_in_cents as early_payment_amount
+        from financing f
+        join invoice i on i.financing_id = f.id
+        where f.id > :afterFinancingId
+            and (:purchaserId is null or f.purchaser_id = :purchaserId)
+            and (:creditorId is null or i.creditor_id = :creditorId)
+            and (:runId is null or f.run_id = :runId)
+            and (:from is null or f.financing_date >= :from)
+            and (:to is null or f.financing_date <= :to)
+        order by f.id
+        limit :pageSize""",
+            nativeQuery = true)
+    List<FinancingExportTuple> findExportPage(@Param("afterFinancingId") long afterFinancingId,
+                                              @Param("purchaserId") Long purchaserId,
+                                              @Param("creditorId") Long creditorId,
+                                              @Param("runId") Long runId,
+                                              @Param("from") LocalDate from,
+                                              @Param("to") LocalDate to,
+                                              @Param("pageSize") int pageSize);
+}
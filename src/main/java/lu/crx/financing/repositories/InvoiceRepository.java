@@ -1,12 +1,20 @@
 package lu.crx.financing.repositories;
 
+import jakarta.persistence.QueryHint;
+import lu.crx.financing.dtos.EquivalenceClassTuple;
 import lu.crx.financing.dtos.InvoiceTuple;
+import lu.crx.financing.dtos.PendingInvoiceTuple;
+import lu.crx.financing.dtos.UnfinancedInvoiceTuple;
 import lu.crx.financing.entities.Invoice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
 
 @Repository
 public interface InvoiceRepository extends JpaRepository<Invoice, Long> {
@@ -16,6 +24,7 @@ public interface InvoiceRepository extends JpaRepository<Invoice, Long> {
     and fulfill their creditors maximum financing rate (Creditor.maxFinancingRateInBps) and their purchasers minimum financing term in days (Purchaser.minimumFinancingTermInDays).
 
     Note: Early payment amount is calculated in cents rounded to integral value.
+    Note: Invoices scheduled by the eligibility calendar for a later day or permanently ineligible are skipped.
     Note: This query returns early payment amounts for all relevant purchasers for the given invoice
      */
     @Query(value = """
@@ -30,9 +39,10 @@ public interface InvoiceRepository extends JpaRepository<Invoice, Long> {
              from invoice i
              join creditor c on i.creditor_id = c.id
              join purchaser_financing_settings pfs on i.creditor_id = pfs.creditor_id
-             join purchaser_purchaser_financing_settings ppfs on pfs.id = ppfs.purchaser_financing_settings_id
-             join purchaser p on ppfs.purchaser_id = p.id
+             join purchaser p on pfs.purchaser_id = p.id
              where i.financing_id is null
+                 and (i.next_eligibility_date is null or i.next_eligibility_date <= current_date)
+                 and not i.permanently_ineligible
              order by i.id,
                       p.id),
         eligible_invoices as
@@ -54,12 +64,10 @@ public interface InvoiceRepository extends JpaRepository<Invoice, Long> {
     List<InvoiceTuple> findNotFinancedForAllPurchasers();
 
     /*
-    Query calculating early payment amounts for all invoices that hasn't been financed
-    and fulfill their creditors maximum financing rate (Creditor.maxFinancingRateInBps) and their purchasers minimum financing term in days (Purchaser.minimumFinancingTermInDays).
+    Same candidates as findNotFinancedForAllPurchasers, ordered by invoice and purchaser and streamed
+    instead of materialised, so that the caller can reduce them to a single purchaser per invoice one invoice at a time.
 
-    Note: Early payment amount is calculated in cents rounded to integral value.
-    Note: This query returns early payment amount only for the purchaser that offers the smallest rate for the given invoice.
-        It may have some negative performance impact.
+    Note: The stream has to be consumed and closed within a transaction.
      */
     @Query(value = """
         with invoices as
@@ -73,9 +81,10 @@ public interface InvoiceRepository extends JpaRepository<Invoice, Long> {
              from invoice i
              join creditor c on i.creditor_id = c.id
              join purchaser_financing_settings pfs on i.creditor_id = pfs.creditor_id
-             join purchaser_purchaser_financing_settings ppfs on pfs.id = ppfs.purchaser_financing_settings_id
-             join purchaser p on ppfs.purchaser_id = p.id
+             join purchaser p on pfs.purchaser_id = p.id
              where i.financing_id is null
+                 and (i.next_eligibility_date is null or i.next_eligibility_date <= current_date)
+                 and not i.permanently_ineligible
              order by i.id,
                       p.id),
         eligible_invoices as
@@ -86,22 +95,181 @@ public interface InvoiceRepository extends JpaRepository<Invoice, Long> {
                     value_in_cents - round(value_in_cents * financing_rate * 0.0001) as early_payment_amount
              from invoices
              where days_to_finance >= minimum_financing_term_in_days
-                 and financing_rate <= max_financing_rate_in_bps),
-        eligible_grouped_invoices as
-            (select iid,
-                    max(early_payment_amount) as max_early_payment_amount
-             from eligible_invoices
-             group by iid)
-        select grouped.iid as invoice_id,
+                 and financing_rate <= max_financing_rate_in_bps)
+        select iid as invoice_id,
                pid as purchaser_id,
                days_to_finance,
                financing_rate,
                early_payment_amount
-        from eligible_invoices as not_grouped,
-             eligible_grouped_invoices as grouped
-        where grouped.iid = not_grouped.iid
-            and grouped.max_early_payment_amount = not_grouped.early_payment_amount
+        from eligible_invoices
+        order by invoice_id,
+                 purchaser_id""",
+            nativeQuery = true)
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    Stream<InvoiceTuple> streamNotFinancedForAllPurchasers();
+
+    /*
+    Query calculating early payment amounts for all invoices that hasn't been financed
+    and fulfill their creditors maximum financing rate (Creditor.maxFinancingRateInBps) and their purchasers minimum financing term in days (Purchaser.minimumFinancingTermInDays).
+
+    Note: Early payment amount is calculated in cents rounded to integral value.
+    Note: Invoices scheduled by the eligibility calendar for a later day or permanently ineligible are skipped.
+    Note: This query returns early payment amount only for the purchaser that offers the smallest rate for the given invoice,
+        the one with the lowest id on a tie. All purchasers finance the invoice for the same number of days, so the smallest
+        rate is the smallest annual rate: the settings of the creditor are looked up in the order of the
+        (creditor_id, annual_rate_in_bps, purchaser_id) index and the first eligible one is taken.
+     */
+    @Query(value = """
+        with invoices as
+            (select i.id as iid,
+                    i.creditor_id,
+                    i.value_in_cents,
+                    c.max_financing_rate_in_bps,
+                    datediff(day, current_date, i.maturity_date) as days_to_finance
+             from invoice i
+             join creditor c on i.creditor_id = c.id
+             where i.financing_id is null
+                 and (i.next_eligibility_date is null or i.next_eligibility_date <= current_date)
+                 and not i.permanently_ineligible),
+        cheapest_invoices as
+            (select iid,
+                    value_in_cents,
+                    days_to_finance,
+                    (select pfs.id
+                     from purchaser_financing_settings pfs use index (purchaser_financing_settings_creditor_rate_idx)
+                     join purchaser p on pfs.purchaser_id = p.id
+                     where pfs.creditor_id = invoices.creditor_id
+                         and days_to_finance >= p.minimum_financing_term_in_days
+                         and cast(pfs.annual_rate_in_bps * days_to_finance as float) / cast(360 as float) <= max_financing_rate_in_bps
+                     order by pfs.annual_rate_in_bps,
+                              pfs.purchaser_id
+                     limit 1) as pfs_id
+             from invoices),
+        eligible_invoices as
+            (select iid,
+                    pfs.purchaser_id as pid,
+                    days_to_finance,
+                    value_in_cents,
+                    cast(pfs.annual_rate_in_bps * days_to_finance as float) / cast(360 as float) as financing_rate
+             from cheapest_invoices
+             join purchaser_financing_settings pfs on pfs.id = cheapest_invoices.pfs_id)
+        select iid as invoice_id,
+               pid as purchaser_id,
+               days_to_finance,
+               financing_rate,
+               value_in_cents - round(value_in_cents * financing_rate * 0.0001) as early_payment_amount
+        from eligible_invoices
+        order by invoice_id
         """,
             nativeQuery = true)
     List<InvoiceTuple> findNotFinancedForLowestRatePurchaser();
+
+    /*
+    Query returning the invoices that hasn't been financed with the terms of their creditors, for the selection
+    of the purchasers in memory by the PurchaserSelectionEngine, i.e. the invoices evaluated
+    by findNotFinancedForLowestRatePurchaser.
+
+    Note: Invoices scheduled by the eligibility calendar for a later day or permanently ineligible are skipped.
+     */
+    @Query(value = """
+        with invoices as
+            (select i.id as iid,
+                    i.creditor_id,
+                    i.value_in_cents,
+                    c.max_financing_rate_in_bps,
+                    datediff(day, current_date, i.maturity_date) as days_to_finance
+             from invoice i
+             join creditor c on i.creditor_id = c.id
+             where i.financing_id is null
+                 and (i.next_eligibility_date is null or i.next_eligibility_date <= current_date)
+                 and not i.permanently_ineligible)
+        select iid as invoice_id,
+               creditor_id,
+               value_in_cents,
+               max_financing_rate_in_bps,
+               days_to_finance
+        from invoices
+        order by invoice_id""",
+            nativeQuery = true)
+    List<PendingInvoiceTuple> findNotFinancedForSelection();
+
+    /*
+    Query streaming all invoices that hasn't been financed with the maximum financing rates of their creditors,
+    for the FinancingForecastService evaluating them day by day.
+
+    Note: Nothing depends on the current date, the eligibility calendar is ignored as it only holds for today.
+    Note: The stream has to be consumed and closed within a transaction.
+     */
+    @Query(value = """
+        with invoices as
+            (select i.id as iid,
+                    i.creditor_id,
+                    i.value_in_cents,
+                    c.max_financing_rate_in_bps,
+                    i.maturity_date
+             from invoice i
+             join creditor c on i.creditor_id = c.id
+             where i.financing_id is null)
+        select iid as invoice_id,
+               creditor_id,
+               value_in_cents,
+               max_financing_rate_in_bps,
+               maturity_date
+        from invoices""",
+            nativeQuery = true)
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    Stream<UnfinancedInvoiceTuple> streamNotFinancedForForecast();
+
+    /*
+    Query selecting the purchaser with the smallest rate once per equivalence class of the invoices that hasn't been financed,
+    i.e. per creditor and maturity date: all invoices of a class are financed for the same number of days, so they have
+    the same eligible purchasers and the same winner, see findNotFinancedForLowestRatePurchaser.
+
+    Note: Only the classes with an eligible purchaser are returned, with the number of their invoices.
+    Note: The early payment amounts depend on the values of the invoices and are calculated when the class is persisted.
+     */
+    @Query(value = """
+        with classes as
+            (select i.creditor_id,
+                    i.maturity_date,
+                    count(*) as invoice_count,
+                    c.max_financing_rate_in_bps,
+                    datediff(day, current_date, i.maturity_date) as days_to_finance
+             from invoice i
+             join creditor c on i.creditor_id = c.id
+             where i.financing_id is null
+                 and (i.next_eligibility_date is null or i.next_eligibility_date <= current_date)
+                 and not i.permanently_ineligible
+             group by i.creditor_id,
+                      i.maturity_date,
+                      c.max_financing_rate_in_bps),
+        cheapest_classes as
+            (select creditor_id,
+                    maturity_date,
+                    invoice_count,
+                    days_to_finance,
+                    (select pfs.id
+                     from purchaser_financing_settings pfs use index (purchaser_financing_settings_creditor_rate_idx)
+                     join purchaser p on pfs.purchaser_id = p.id
+                     where pfs.creditor_id = classes.creditor_id
+                         and days_to_finance >= p.minimum_financing_term_in_days
+                         and cast(pfs.annual_rate_in_bps * days_to_finance as float) / cast(360 as float) <= max_financing_rate_in_bps
+                     order by pfs.annual_rate_in_bps,
+                              pfs.purchaser_id
+                     limit 1) as pfs_id
+             from classes)
+        select cheapest_classes.creditor_id,
+               maturity_date,
+               invoice_count,
+               pfs.purchaser_id,
+               days_to_finance,
+               pfs.annual_rate_in_bps,
+               cast(pfs.annual_rate_in_bps * days_to_finance as float) / cast(360 as float) as financing_rate
+        from cheapest_classes
+        join purchaser_financing_settings pfs on pfs.id = cheapest_classes.pfs_id
+        order by creditor_id,
+                 maturity_date
+        """,
+            nativeQuery = true)
+    List<EquivalenceClassTuple> findWinnersOfEquivalenceClasses();
 }
@@ -0,0 +1,87 @@
+package lu.crx.financing.repositories;
+
+import lu.crx.financing.dtos.DailyFinancingAggregate;
+import lu.crx.financing.entities.PurchaserDailyFinancing;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface PurchaserDailyFinancingRepository extends JpaRepository<PurchaserDailyFinancing, Long> {
+
+    /*
+    Owners of the financing of a run, read within the transaction of the run.
+     */
+    @Query(value = """
+        select distinct f.purchaser_id
+        from financing f
+        where f.run_id = :runId""",
+            nativeQuery = true)
+    List<Long> findPurchaserIdsOfRun(@Param("runId") long runId);
+
+    /*
+    Creates the missing totals of the day of the given purchasers with zero totals. Two runs creating the same row would
+    otherwise both insert it and the second one would fail on the unique constraint, so the rows are created ahead
+    of the update, each in a short transaction of its own.
+     */
+    @Modifying
+    @Query(value = """
+        insert into purchaser_daily_financing (purchaser_id, financing_date, invoice_count, early_payment_amount_in_cents,
+                                               financing_rate_sum_in_bps)
+        select o.id, :financingDate, 0, 0, 0
+        from purchaser o
+        where o.id in (:purchaserIds)
+            and not exists (select 1
+                            from purchaser_daily_financing t
+                            where t.purchaser_id = o.id
+                                and t.financing_date = :financingDate)""",
+            nativeQuery = true)
+    int createMissing(@Param("purchaserIds") Collection<Long> purchaserIds,
+                      @Param("financingDate") LocalDate financingDate);
+
+    /*
+    Adds the totals of all financing of a run to the purchasers' totals of the day. The totals missing are inserted
+    as well, unless created ahead by createMissing.
+     */
+    @Modifying
+    @Query(value = """
+        merge into purchaser_daily_financing t
+        using (select f.purchaser_id,
+                      f.financing_date,
+                      count(*) as invoice_count,
+                      sum(f.early_payment_amount_in_cents) as early_payment_amount_in_cents,
+                      sum(cast(f.financing_rate_in_bps as double precision)) as financing_rate_sum_in_bps
+               from financing f
+               where f.run_id = :runId
+               group by f.purchaser_id,
+                        f.financing_date) s
+        on t.purchaser_id = s.purchaser_id
+            and t.financing_date = s.financing_date
+        when matched then
+            update set invoice_count = t.invoice_count + s.invoice_count,
+                       early_payment_amount_in_cents = t.early_payment_amount_in_cents + s.early_payment_amount_in_cents,
+                       financing_rate_sum_in_bps = t.financing_rate_sum_in_bps + s.financing_rate_sum_in_bps
+        when not matched then
+            insert (purchaser_id, financing_date, invoice_count, early_payment_amount_in_cents, financing_rate_sum_in_bps)
+            values (s.purchaser_id, s.financing_date, s.invoice_count, s.early_payment_amount_in_cents, s.financing_rate_sum_in_bps)""",
+            nativeQuery = true)
+    void addRun(@Param("runId") long runId);
+
+    @Query("""
+        select new lu.crx.financing.dtos.DailyFinancingAggregate(a.purchaser.id, a.financingDate, a.invoiceCount,
+            a.earlyPaymentAmountInCents, a.financingRateSumInBps / a.invoiceCount)
+        from PurchaserDailyFinancing a
+        where (:purchaserId is null or a.purchaser.id = :purchaserId)
+            and a.financingDate between :from and :to
+            and a.invoiceCount > 0
+        order by a.financingDate, a.purchaser.id""")
+    List<DailyFinancingAggregate> findAggregates(@Param("purchaserId") Long purchaserId,
+                                                 @Param("from") LocalDate from,
+                                                 @Param("to") LocalDate to);
+}
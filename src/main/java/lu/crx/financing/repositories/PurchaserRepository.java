@@ -1,9 +1,30 @@
 package lu.crx.financing.repositories;
 
+import lu.crx.financing.dtos.PurchaserSettingsTuple;
 import lu.crx.financing.entities.Purchaser;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+
 @Repository
 public interface PurchaserRepository extends JpaRepository<Purchaser, Long> {
+
+    /*
+    Financing settings of all purchasers, in the order of the (creditor_id, annual_rate_in_bps, purchaser_id) index,
+    i.e. the order in which findNotFinancedForLowestRatePurchaser looks the cheapest purchaser of a creditor up.
+     */
+    @Query(value = """
+        select pfs.creditor_id,
+               pfs.purchaser_id,
+               pfs.annual_rate_in_bps,
+               p.minimum_financing_term_in_days
+        from purchaser_financing_settings pfs
+        join purchaser p on pfs.purchaser_id = p.id
+        order by pfs.creditor_id,
+                 pfs.annual_rate_in_bps,
+                 pfs.purchaser_id""",
+            nativeQuery = true)
+    List<PurchaserSettingsTuple> findSettingsOrderedByRate();
 }
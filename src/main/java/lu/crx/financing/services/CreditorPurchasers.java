@@ -0,0 +1,101 @@
+package lu.crx.financing.services;
+
+import lu.crx.financing.dtos.PurchaserSettingsTuple;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Financing settings of the purchasers of a single creditor, held as a structure of arrays for the
+ * {@link PurchaserSelector}: the i-th purchaser finances at {@code annualRatesInBps[i]} for at least
+ * {@code minimumTermsInDays[i]} days.
+ * <p>
+ * The purchasers are ordered by annual rate and purchaser id. All of them finance an invoice for the same number
+ * of days, so the first eligible one offers the lowest financing rate, the one with the lowest id on a tie.
+ */
+public class CreditorPurchasers {
+
+    private static final Comparator<PurchaserSettingsTuple> RATE_ORDER = Comparator
+            .comparing(PurchaserSettingsTuple::getAnnualRateInBps)
+            .thenComparing(PurchaserSettingsTuple::getPurchaserId);
+
+    private final long[] purchaserIds;
+
+    private final int[] annualRatesInBps;
+
+    private final int[] minimumTermsInDays;
+
+    private final int shortestTermInDays;
+
+    CreditorPurchasers(long[] purchaserIds, int[] annualRatesInBps, int[] minimumTermsInDays) {
+        if (annualRatesInBps.length != purchaserIds.length || minimumTermsInDays.length != purchaserIds.length) {
+            throw new IllegalArgumentException("All arrays must hold a value per purchaser");
+        }
+        this.purchaserIds = purchaserIds;
+        this.annualRatesInBps = annualRatesInBps;
+        this.minimumTermsInDays = minimumTermsInDays;
+        this.shortestTermInDays = IntStream.of(minimumTermsInDays).min().orElse(Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param settings settings of any number of creditors, in any order
+     * @return purchasers per creditor id
+     */
+    public static Map<Long, CreditorPurchasers> byCreditor(List<? extends PurchaserSettingsTuple> settings) {
+        var purchasersByCreditor = new HashMap<Long, CreditorPurchasers>();
+        settings.stream()
+                .collect(Collectors.groupingBy(PurchaserSettingsTuple::getCreditorId))
+                .forEach((creditorId, creditorSettings) -> purchasersByCreditor.put(creditorId, of(creditorSettings)));
+        return purchasersByCreditor;
+    }
+
+    /**
+     * @param settings settings of a single creditor, in any order
+     */
+    public static CreditorPurchasers of(List<? extends PurchaserSettingsTuple> settings) {
+        var ordered = settings.stream().sorted(RATE_ORDER).toList();
+        var purchaserIds = new long[ordered.size()];
+        var annualRatesInBps = new int[ordered.size()];
+        var minimumTermsInDays = new int[ordered.size()];
+        for (var i = 0; i < ordered.size(); i++) {
+            purchaserIds[i] = ordered.get(i).getPurchaserId();
+            annualRatesInBps[i] = ordered.get(i).getAnnualRateInBps();
+            minimumTermsInDays[i] = ordered.get(i).getMinimumFinancingTermInDays();
+        }
+        return new CreditorPurchasers(purchaserIds, annualRatesInBps, minimumTermsInDays);
+    }
+
+    public int size() {
+        return purchaserIds.length;
+    }
+
+    public long purchaserId(int index) {
+        return purchaserIds[index];
+    }
+
+    public int annualRateInBps(int index) {
+        return annualRatesInBps[index];
+    }
+
+    /**
+     * @return shortest minimum term of the purchasers, no purchaser finances an invoice for fewer days
+     */
+    public int shortestTermInDays() {
+        return shortestTermInDays;
+    }
+
+    /*
+    The arrays are shared with the selectors rather than copied, they must not be modified.
+     */
+    int[] annualRatesInBps() {
+        return annualRatesInBps;
+    }
+
+    int[] minimumTermsInDays() {
+        return minimumTermsInDays;
+    }
+}
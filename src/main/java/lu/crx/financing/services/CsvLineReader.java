@@ -0,0 +1,292 @@
+package lu.crx.financing.services;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+
+/**
+ * Streaming reader of the lines of a CSV file, splitting and parsing the fields in place in its read buffer, so that
+ * no object is allocated per line or field. The accessors of the fields are only valid until the next line is read.
+ * <p>
+ * Fields may be enclosed in double quotes, e.g. to hold commas, a double quote within a quoted field is doubled.
+ * Lines end with LF or CRLF, quoted fields can't span lines, empty lines are skipped. A line longer than the buffer,
+ * with more than {@link #MAX_FIELDS} fields or with a malformed quoted field is returned as malformed, with no fields,
+ * and the reader goes on with the next line.
+ */
+final class CsvLineReader {
+
+    static final int MAX_FIELDS = 16;
+
+    /**
+     * Returned by the parsers for an empty or invalid field.
+     */
+    static final long INVALID = Long.MIN_VALUE;
+
+    private final ReadableByteChannel channel;
+
+    private final byte[] buffer;
+
+    private final ByteBuffer byteBuffer;
+
+    private final int[] fieldStarts = new int[MAX_FIELDS];
+
+    private final int[] fieldEnds = new int[MAX_FIELDS];
+
+    private int position;
+
+    private int limit;
+
+    private boolean endOfInput;
+
+    private long lineNumber;
+
+    private int fieldCount;
+
+    private String malformation;
+
+    CsvLineReader(ReadableByteChannel channel, int bufferSize) {
+        this.channel = channel;
+        this.buffer = new byte[bufferSize];
+        this.byteBuffer = ByteBuffer.wrap(buffer);
+    }
+
+    /**
+     * @return false at the end of the input
+     */
+    boolean next() throws IOException {
+        while (true) {
+            var lineEnd = indexOfLineFeed(position);
+            if (lineEnd < 0) {
+                if (position == 0 && limit == buffer.length) {
+                    lineNumber++;
+                    skipLine();
+                    malformed("Line longer than " + buffer.length + " bytes");
+                    return true;
+                }
+                if (!endOfInput) {
+                    fill();
+                    continue;
+                }
+                if (position == limit) {
+                    return false;
+                }
+                lineEnd = limit;
+            }
+
+            lineNumber++;
+            var start = position;
+            var end = lineEnd > start && buffer[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+            position = Math.min(lineEnd + 1, limit);
+            if (end > start) {
+                split(start, end);
+                return true;
+            }
+        }
+    }
+
+    long lineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * @return reason why the line is malformed, null for a well-formed line
+     */
+    String malformation() {
+        return malformation;
+    }
+
+    int fieldCount() {
+        return fieldCount;
+    }
+
+    boolean isEmpty(int field) {
+        return fieldStarts[field] == fieldEnds[field];
+    }
+
+    /**
+     * @return the field decoded from UTF-8, allocated, e.g. for error messages
+     */
+    String text(int field) {
+        return new String(buffer, fieldStarts[field], fieldEnds[field] - fieldStarts[field], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return id of the field looked up by its bytes, see {@link IdsByName#get}
+     */
+    long id(int field, IdsByName ids) {
+        return ids.get(buffer, fieldStarts[field], fieldEnds[field] - fieldStarts[field]);
+    }
+
+    /**
+     * @return the field as a decimal number with an optional minus sign, {@link #INVALID} when it isn't one or overflows
+     */
+    long parseLong(int field) {
+        var i = fieldStarts[field];
+        var end = fieldEnds[field];
+        var negative = i < end && buffer[i] == '-';
+        if (negative) {
+            i++;
+        }
+        if (i == end) {
+            return INVALID;
+        }
+
+        var value = 0L;
+        for (; i < end; i++) {
+            var digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9 || value > (Long.MAX_VALUE - digit) / 10) {
+                return INVALID;
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * @return epoch day of the field as an ISO date ({@code yyyy-MM-dd}), {@link #INVALID} when it isn't one
+     */
+    long parseDate(int field) {
+        var start = fieldStarts[field];
+        if (fieldEnds[field] - start != 10 || buffer[start + 4] != '-' || buffer[start + 7] != '-') {
+            return INVALID;
+        }
+
+        var year = digits(start, 4);
+        var month = digits(start + 5, 2);
+        var day = digits(start + 8, 2);
+        if (year < 0 || month < 0 || day < 0) {
+            return INVALID;
+        }
+        try {
+            return LocalDate.of(year, month, day).toEpochDay();
+        } catch (DateTimeException e) {
+            return INVALID;
+        }
+    }
+
+    private int digits(int offset, int length) {
+        var value = 0;
+        for (var i = offset; i < offset + length; i++) {
+            var digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /*
+    Quoted fields are unescaped in place: the content shifts left over the opening quote and the doubled quotes,
+    so a field is always a plain range of the buffer.
+     */
+    private void split(int start, int end) {
+        malformation = null;
+        fieldCount = 0;
+
+        var i = start;
+        while (true) {
+            if (fieldCount == MAX_FIELDS) {
+                malformed("More than " + MAX_FIELDS + " fields");
+                return;
+            }
+
+            var fieldStart = i;
+            var fieldEnd = i;
+            if (i < end && buffer[i] == '"') {
+                i++;
+                while (true) {
+                    if (i == end) {
+                        malformed("Unterminated quoted field " + (fieldCount + 1));
+                        return;
+                    }
+                    var b = buffer[i++];
+                    if (b == '"') {
+                        if (i < end && buffer[i] == '"') {
+                            i++;
+                        } else {
+                            break;
+                        }
+                    }
+                    buffer[fieldEnd++] = b;
+                }
+                if (i < end && buffer[i] != ',') {
+                    malformed("Unexpected character after quoted field " + (fieldCount + 1));
+                    return;
+                }
+            } else {
+                while (i < end && buffer[i] != ',') {
+                    i++;
+                }
+                fieldEnd = i;
+            }
+
+            fieldStarts[fieldCount] = fieldStart;
+            fieldEnds[fieldCount] = fieldEnd;
+            fieldCount++;
+
+            if (i == end) {
+                return;
+            }
+            i++;
+        }
+    }
+
+    private void malformed(String reason) {
+        malformation = reason;
+        fieldCount = 0;
+    }
+
+    private int indexOfLineFeed(int from) {
+        for (var i = from; i < limit; i++) {
+            if (buffer[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /*
+    Discards the buffered bytes up to and including the next line feed, reading further when the line goes on.
+     */
+    private void skipLine() throws IOException {
+        while (true) {
+            var lineEnd = indexOfLineFeed(position);
+            if (lineEnd >= 0) {
+                position = lineEnd + 1;
+                return;
+            }
+            position = limit;
+            if (endOfInput) {
+                return;
+            }
+            fill();
+        }
+    }
+
+    /*
+    Moves the unread bytes to the start of the buffer and reads after them, until at least one byte is read
+    or the end of the input is reached.
+     */
+    private void fill() throws IOException {
+        System.arraycopy(buffer, position, buffer, 0, limit - position);
+        limit -= position;
+        position = 0;
+
+        byteBuffer.limit(buffer.length).position(limit);
+        while (true) {
+            var read = channel.read(byteBuffer);
+            if (read < 0) {
+                endOfInput = true;
+                return;
+            }
+            if (read > 0) {
+                limit += read;
+                return;
+            }
+        }
+    }
+}
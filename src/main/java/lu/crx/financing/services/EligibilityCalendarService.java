@@ -0,0 +1,131 @@
+package lu.crx.financing.services;
+
+import jakarta.transaction.Transactional;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.entities.FinancingRun;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Eligibility calendar of the invoices rejected by the financing.
+ * <p>
+ * The financing rate of an invoice shrinks every day as its maturity approaches, so an invoice rejected because of
+ * a too high rate becomes eligible on a computable day, as long as its term is still long enough for the purchaser
+ * by then. Every invoice rejected by a run is scheduled for that day ({@code invoice.next_eligibility_date}) or marked
+ * permanently ineligible, and the financing queries skip the invoices scheduled for a later day.
+ * <p>
+ * The calendar only holds for the financing settings it was computed with, their fingerprint is stored
+ * on the {@link lu.crx.financing.entities.FinancingRun} and the calendar is cleared when they change.
+ */
+@Slf4j
+@Service
+@AllArgsConstructor
+public class EligibilityCalendarService {
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * @return hash of the purchaser financing settings, the minimum terms of their purchasers and the maximum rates
+     * of their creditors
+     */
+    public String settingsFingerprint() {
+        return jdbcTemplate.queryForObject("""
+                select rawtohex(hash('SHA-256', coalesce(listagg(concat_ws(',', pfs.id, pfs.purchaser_id, pfs.creditor_id,
+                                                                         pfs.annual_rate_in_bps,
+                                                                         p.minimum_financing_term_in_days,
+                                                                         c.max_financing_rate_in_bps), ';')
+                                                             within group (order by pfs.id), '')))
+                from purchaser_financing_settings pfs
+                join purchaser p on pfs.purchaser_id = p.id
+                join creditor c on pfs.creditor_id = c.id""", Map.of(), String.class);
+    }
+
+    /**
+     * Clears the calendar when the financing settings changed since the last completed run
+     * and records the fingerprint of the current settings on the run.
+     * <p>
+     * The calendar is cleared in a transaction of its own, so that it is visible to the reader of the pipelined
+     * financing, which streams the invoices in another transaction. A cleared calendar only makes the next run
+     * evaluate more invoices, it is kept even when the run fails.
+     *
+     * @return true when the calendar has been cleared
+     */
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public boolean refresh(FinancingRun run) {
+        var fingerprint = settingsFingerprint();
+        run.setSettingsFingerprint(fingerprint);
+
+        var previousFingerprint = jdbcTemplate.queryForList("""
+                select settings_fingerprint
+                from financing_run
+                where completed_at is not null
+                    and settings_fingerprint is not null
+                order by id desc
+                limit 1""", Map.of(), String.class).stream().findFirst();
+        if (previousFingerprint.isEmpty() || Objects.equals(previousFingerprint.get(), fingerprint)) {
+            return false;
+        }
+
+        var cleared = jdbcTemplate.update("""
+                update invoice
+                set next_eligibility_date = null,
+                    permanently_ineligible = false
+                where financing_id is null
+                    and (next_eligibility_date is not null or permanently_ineligible)""", Map.of());
+        log.info("Financing settings changed, eligibility calendar of {} invoices cleared", cleared);
+
+        return true;
+    }
+
+    /**
+     * Schedules every unfinanced invoice evaluated today for the next day it may be financed.
+     * <p>
+     * For every settings of the creditor, the invoice is eligible while its term (days to maturity) is both at least
+     * the minimum term of the purchaser and at most the longest term within the maximum rate of the creditor,
+     * {@code max_financing_rate_in_bps * 360 / annual_rate_in_bps}. The term shrinks by one every day, so the invoice
+     * becomes eligible once its term reaches the shorter of today's term and the longest one, if that is still not
+     * shorter than the minimum term. The earliest such day over all settings is the next eligibility date, invoices
+     * without any are permanently ineligible.
+     * <p>
+     * The invoices eligible today are left alone: they may be claimed by a concurrent run, see {@link InvoiceClaimService}.
+     *
+     * @return number of scheduled invoices
+     */
+    public int schedule() {
+        var scheduled = jdbcTemplate.update("""
+                merge into invoice target
+                using (select id, next_eligibility_date
+                       from (select id,
+                                    min(case when eligible_term >= minimum_financing_term_in_days
+                                             then dateadd(day, -eligible_term, maturity_date) end) as next_eligibility_date
+                             from (select i.id,
+                                          i.maturity_date,
+                                          p.minimum_financing_term_in_days,
+                                          least(datediff(day, current_date, i.maturity_date),
+                                                case when pfs.annual_rate_in_bps = 0
+                                                     then datediff(day, current_date, i.maturity_date)
+                                                     else c.max_financing_rate_in_bps * 360 / pfs.annual_rate_in_bps end) as eligible_term
+                                   from invoice i
+                                   join creditor c on i.creditor_id = c.id
+                                   left join purchaser_financing_settings pfs on i.creditor_id = pfs.creditor_id
+                                   left join purchaser p on pfs.purchaser_id = p.id
+                                   where i.financing_id is null
+                                       and (i.next_eligibility_date is null or i.next_eligibility_date <= current_date)
+                                       and not i.permanently_ineligible)
+                             group by id)
+                       where next_eligibility_date is null
+                           or next_eligibility_date > current_date) source
+                on target.id = source.id
+                when matched then update
+                    set next_eligibility_date = source.next_eligibility_date,
+                        permanently_ineligible = source.next_eligibility_date is null""", Map.of());
+
+        log.info("{} rejected invoices scheduled in the eligibility calendar", scheduled);
+
+        return scheduled;
+    }
+}
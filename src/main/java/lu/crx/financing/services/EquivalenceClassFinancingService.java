@@ -0,0 +1,109 @@
+package lu.crx.financing.services;
+
+import jakarta.persistence.EntityManager;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.dtos.EquivalenceClassTuple;
+import lu.crx.financing.entities.Financing;
+import lu.crx.financing.entities.FinancingRun;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Persistence of the financing of whole equivalence classes of invoices, i.e. of all the unfinanced invoices
+ * of a creditor maturing on the same day, see {@link lu.crx.financing.repositories.InvoiceRepository#findWinnersOfEquivalenceClasses}.
+ * <p>
+ * No invoice entity is loaded: a single select claims the invoices of all the classes of the chunk
+ * ({@code for update skip locked}) and reads their ids only. Every claimed invoice gets an id from the generator of
+ * {@link Financing}, so the ids come from the same pool as the ones of the other modes, and two batched statements
+ * assign the ids to the invoices and insert the financing, calculating the early payment amounts from the values of
+ * the invoices. Invoices claimed by a concurrent run are skipped and counted as lost races of the run,
+ * see {@link InvoiceClaimService}.
+ */
+@Slf4j
+@Service
+@AllArgsConstructor
+public class EquivalenceClassFinancingService {
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    private final EntityManager entityManager;
+
+    private record EquivalenceClass(long creditorId, LocalDate maturityDate) {
+    }
+
+    /**
+     * @return number of financed invoices
+     */
+    public int persist(List<EquivalenceClassTuple> equivalenceClasses, FinancingRun run) {
+        if (equivalenceClasses.isEmpty()) {
+            return 0;
+        }
+
+        var classes = new HashMap<EquivalenceClass, EquivalenceClassTuple>();
+        equivalenceClasses.forEach(equivalenceClass -> classes.put(
+                new EquivalenceClass(equivalenceClass.getCreditorId(), equivalenceClass.getMaturityDate()), equivalenceClass));
+
+        var claimed = jdbcTemplate.query("""
+                        select id, creditor_id, maturity_date
+                        from invoice
+                        where (creditor_id, maturity_date) in (:classes)
+                            and financing_id is null
+                            and (next_eligibility_date is null or next_eligibility_date <= current_date)
+                            and not permanently_ineligible
+                        for update skip locked""",
+                Map.of("classes", classes.keySet().stream()
+                        .map(equivalenceClass -> new Object[]{equivalenceClass.creditorId(), equivalenceClass.maturityDate()})
+                        .toList()),
+                (rs, rowNum) -> Map.entry(rs.getLong("id"),
+                        classes.get(new EquivalenceClass(rs.getLong("creditor_id"), rs.getObject("maturity_date", LocalDate.class)))));
+
+        var session = entityManager.unwrap(SharedSessionContractImplementor.class);
+        var generator = (IdentifierGenerator) session.getFactory().getMappingMetamodel()
+                .getEntityDescriptor(Financing.class).getGenerator();
+        var parameters = claimed.stream()
+                .map(invoice -> new MapSqlParameterSource()
+                        .addValue("invoiceId", invoice.getKey())
+                        .addValue("financingId", generator.generate(session, null))
+                        .addValue("purchaserId", invoice.getValue().getPurchaserId())
+                        .addValue("daysToFinance", invoice.getValue().getDaysToFinance())
+                        .addValue("annualRateInBps", invoice.getValue().getAnnualRateInBps())
+                        .addValue("runId", run.getId())
+                        .addValue("financingDate", run.getFinancingDate()))
+                .toArray(SqlParameterSource[]::new);
+
+        jdbcTemplate.batchUpdate("update invoice set financing_id = :financingId where id = :invoiceId", parameters);
+        var inserted = jdbcTemplate.batchUpdate("""
+                insert into financing (id, purchaser_id, run_id, financing_date, days_to_finance, financing_rate_in_bps,
+                                       early_payment_amount_in_cents)
+                select :financingId,
+                       :purchaserId,
+                       :runId,
+                       :financingDate,
+                       :daysToFinance,
+                       r.financing_rate,
+                       i.value_in_cents - round(i.value_in_cents * r.financing_rate * 0.0001)
+                from invoice i
+                cross join (select cast(cast(:annualRateInBps as integer) * cast(:daysToFinance as integer) as float) / cast(360 as float) as financing_rate) r
+                where i.id = :invoiceId""", parameters);
+
+        var financed = IntStream.of(inserted).sum();
+        var lostRaces = equivalenceClasses.stream().mapToLong(EquivalenceClassTuple::getInvoiceCount).sum()
+                - claimed.size();
+        run.setLostRaces(run.getLostRaces() + (int) lostRaces);
+        log.debug("{} invoices of {} equivalence classes financed, {} lost races", financed, equivalenceClasses.size(),
+                lostRaces);
+
+        return financed;
+    }
+}
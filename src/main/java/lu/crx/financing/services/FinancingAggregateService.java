@@ -0,0 +1,99 @@
+package lu.crx.financing.services;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.dtos.DailyFinancingAggregate;
+import lu.crx.financing.entities.FinancingRun;
+import lu.crx.financing.repositories.CreditorDailyFinancingRepository;
+import lu.crx.financing.repositories.PurchaserDailyFinancingRepository;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Maintains daily financing totals per purchaser and per creditor.
+ * <p>
+ * The totals are updated by {@link FinancingService} once per run, at its end and in its transaction, so reading them
+ * costs O(purchasers x days) no matter how many invoices have been financed. The rows of the totals are locked until
+ * the run commits, updating them last keeps concurrent runs from waiting on each other for the whole run.
+ * <p>
+ * The rows missing for the day are created beforehand with zero totals, each in a transaction of its own, so that
+ * concurrent runs only ever update the same rows and never insert them twice. Such rows are left behind by failed
+ * runs and are not returned.
+ */
+@Slf4j
+@Service
+@AllArgsConstructor
+public class FinancingAggregateService {
+
+    private static final int CREATE_ATTEMPTS = 3;
+
+    private final PurchaserDailyFinancingRepository purchaserDailyFinancingRepository;
+
+    private final CreditorDailyFinancingRepository creditorDailyFinancingRepository;
+
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Adds all financing of the given run to the totals of their purchasers and creditors.
+     */
+    public void recordRun(FinancingRun run) {
+        var purchaserIds = purchaserDailyFinancingRepository.findPurchaserIdsOfRun(run.getId());
+        var creditorIds = creditorDailyFinancingRepository.findCreditorIdsOfRun(run.getId());
+        createMissing(purchaserIds, creditorIds, run.getFinancingDate());
+
+        purchaserDailyFinancingRepository.addRun(run.getId());
+        creditorDailyFinancingRepository.addRun(run.getId());
+
+        log.debug("Financing totals of run {} updated", run.getId());
+    }
+
+    /**
+     * @param purchaserId purchaser to return the totals for, all purchasers when null
+     */
+    public List<DailyFinancingAggregate> getPurchaserAggregates(Long purchaserId, LocalDate from, LocalDate to) {
+        return purchaserDailyFinancingRepository.findAggregates(purchaserId, from, to);
+    }
+
+    /**
+     * @param creditorId creditor to return the totals for, all creditors when null
+     */
+    public List<DailyFinancingAggregate> getCreditorAggregates(Long creditorId, LocalDate from, LocalDate to) {
+        return creditorDailyFinancingRepository.findAggregates(creditorId, from, to);
+    }
+
+    /*
+    A concurrent run creating the same rows makes the insert fail on the unique constraint once it commits,
+    the rows exist then and the next attempt skips them.
+     */
+    private void createMissing(List<Long> purchaserIds, List<Long> creditorIds, LocalDate financingDate) {
+        if (purchaserIds.isEmpty() && creditorIds.isEmpty()) {
+            return;
+        }
+
+        var newTransaction = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        for (var attempt = 1; ; attempt++) {
+            try {
+                newTransaction.executeWithoutResult(status -> {
+                    if (!purchaserIds.isEmpty()) {
+                        purchaserDailyFinancingRepository.createMissing(purchaserIds, financingDate);
+                    }
+                    if (!creditorIds.isEmpty()) {
+                        creditorDailyFinancingRepository.createMissing(creditorIds, financingDate);
+                    }
+                });
+                return;
+            } catch (DataIntegrityViolationException e) {
+                if (attempt == CREATE_ATTEMPTS) {
+                    throw e;
+                }
+                log.debug("Financing totals of {} created by a concurrent run, retrying", financingDate);
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package lu.crx.financing.services;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.dtos.FinancingExportFilter;
+import lu.crx.financing.dtos.FinancingExportTuple;
+import lu.crx.financing.repositories.FinancingRepository;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.LongFunction;
+
+/**
+ * Streaming export of the financing results for reconciliation.
+ * <p>
+ * The results are read in keyset pages (see {@link FinancingRepository#findExportPage}) and every page is written
+ * before the next one is fetched, so the heap used doesn't depend on the number of exported rows. The target is any
+ * {@link Writer}, e.g. a file or the body of an HTTP response.
+ * <p>
+ * Monthly partitions overlapping the period of the filter are exported first, then the archived financing of matured
+ * invoices and finally the current financing.
+ */
+@Slf4j
+@Service
+@AllArgsConstructor
+public class FinancingExportService {
+
+    public enum Format {
+        CSV, NDJSON
+    }
+
+    private static final String CSV_HEADER =
+            "financing_id,invoice_id,creditor_id,purchaser_id,days_to_finance,financing_rate_in_bps,early_payment_amount_in_cents";
+
+    private final FinancingRepository financingRepository;
+
+    private final FinancingPartitionService financingPartitionService;
+
+    private final FinancingProperties financingProperties;
+
+    /**
+     * @return number of exported rows
+     */
+    public long export(FinancingExportFilter filter, Format format, Writer writer) throws IOException {
+        log.info("Export of financing started, filter: {}, format: {}", filter, format);
+
+        var pageSize = financingProperties.getExport().getPageSize();
+        var exported = 0L;
+
+        if (format == Format.CSV) {
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+        }
+
+        for (var partition : financingPartitionService.getPartitions(filter.from(), filter.to())) {
+            exported += exportPages(afterFinancingId -> financingPartitionService.findExportPage(
+                    partition.getTableName(), afterFinancingId, filter, pageSize), pageSize, format, writer);
+        }
+        exported += exportPages(afterFinancingId -> financingPartitionService.findExportPage(
+                InvoiceArchiveService.FINANCING_ARCHIVE_TABLE, afterFinancingId, filter, pageSize), pageSize, format, writer);
+        exported += exportPages(afterFinancingId -> financingRepository.findExportPage(afterFinancingId,
+                filter.purchaserId(), filter.creditorId(), filter.runId(), filter.from(), filter.to(), pageSize),
+                pageSize, format, writer);
+
+        log.info("Export of financing completed, {} rows exported", exported);
+
+        return exported;
+    }
+
+    private static long exportPages(LongFunction<List<FinancingExportTuple>> pages, int pageSize, Format format,
+                                    Writer writer) throws IOException {
+        var exported = 0L;
+        var afterFinancingId = 0L;
+
+        while (true) {
+            var page = pages.apply(afterFinancingId);
+            for (var row : page) {
+                switch (format) {
+                    case CSV -> writeCsv(row, writer);
+                    case NDJSON -> writeNdjson(row, writer);
+                }
+            }
+            writer.flush();
+
+            exported += page.size();
+            if (page.size() < pageSize) {
+                return exported;
+            }
+            afterFinancingId = page.getLast().getFinancingId();
+        }
+    }
+
+    /**
+     * @return number of exported rows
+     */
+    public long exportToFile(FinancingExportFilter filter, Format format, Path file) {
+        try (var writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            return export(filter, format, writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot export financing to " + file, e);
+        }
+    }
+
+    private static void writeCsv(FinancingExportTuple row, Writer writer) throws IOException {
+        writer.write(String.valueOf(row.getFinancingId()));
+        writer.write(',');
+        writer.write(String.valueOf(row.getInvoiceId()));
+        writer.write(',');
+        writer.write(String.valueOf(row.getCreditorId()));
+        writer.write(',');
+        writer.write(String.valueOf(row.getPurchaserId()));
+        writer.write(',');
+        writer.write(String.valueOf(row.getDaysToFinance()));
+        writer.write(',');
+        writer.write(String.valueOf(row.getFinancingRate()));
+        writer.write(',');
+        writer.write(String.valueOf(row.getEarlyPaymentAmount()));
+        writer.write('\n');
+    }
+
+    private static void writeNdjson(FinancingExportTuple row, Writer writer) throws IOException {
+        writer.write("{\"financingId\":");
+        writer.write(String.valueOf(row.getFinancingId()));
+        writer.write(",\"invoiceId\":");
+        writer.write(String.valueOf(row.getInvoiceId()));
+        writer.write(",\"creditorId\":");
+        writer.write(String.valueOf(row.getCreditorId()));
+        writer.write(",\"purchaserId\":");
+        writer.write(String.valueOf(row.getPurchaserId()));
+        writer.write(",\"daysToFinance\":");
+        writer.write(String.valueOf(row.getDaysToFinance()));
+        writer.write(",\"financingRateInBps\":");
+        writer.write(String.valueOf(row.getFinancingRate()));
+        writer.write(",\"earlyPaymentAmountInCents\":");
+        writer.write(String.valueOf(row.getEarlyPaymentAmount()));
+        writer.write("}\n");
+    }
+}
@@ -0,0 +1,139 @@
+package lu.crx.financing.services;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.dtos.DailyFinancingAggregate;
+import lu.crx.financing.dtos.UnfinancedInvoiceTuple;
+import lu.crx.financing.repositories.InvoiceRepository;
+import lu.crx.financing.repositories.PurchaserRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Forecast of the financing over the next days, per purchaser and financing date, e.g. for the treasury
+ * of the purchasers.
+ * <p>
+ * The term of an unfinanced invoice shrinks by one every day and so does its financing rate, an invoice rejected today
+ * may be financed on a later day. The unfinanced invoices are streamed once and every invoice is evaluated day by day
+ * with the rules of the financing ({@link PurchaserSelector}), until the first day a purchaser is eligible: the invoice
+ * is expected to be financed on that day by the purchaser with the lowest rate. Nothing depends on the current date
+ * of the database, so any first day can be forecast.
+ * <p>
+ * The forecast holds for the current financing settings and the invoices known today, invoices received later are not
+ * forecast.
+ */
+@Slf4j
+@Service
+@AllArgsConstructor
+public class FinancingForecastService {
+
+    private final InvoiceRepository invoiceRepository;
+
+    private final PurchaserRepository purchaserRepository;
+
+    private final FinancingProperties financingProperties;
+
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Accumulated totals of a single purchaser on a single day.
+     */
+    private static class Totals {
+        private long invoiceCount;
+        private long earlyPaymentAmount;
+        private double financingRateSum;
+    }
+
+    /**
+     * Forecast of {@code financing.forecast.days} financing dates starting today.
+     */
+    public List<DailyFinancingAggregate> forecast() {
+        return forecast(LocalDate.now(), financingProperties.getForecast().getDays());
+    }
+
+    /**
+     * @param from first financing date
+     * @param days number of financing dates
+     * @return expected totals per financing date and purchaser, ordered by date and purchaser, days and purchasers
+     * without any financing are left out
+     */
+    public List<DailyFinancingAggregate> forecast(LocalDate from, int days) {
+        if (days <= 0) {
+            throw new IllegalArgumentException("At least one day has to be forecast, not " + days);
+        }
+
+        var startedAt = System.nanoTime();
+        var selector = PurchaserSelector.create(financingProperties.getSelection().isVectorized());
+        var purchasersByCreditor = CreditorPurchasers.byCreditor(purchaserRepository.findSettingsOrderedByRate());
+        var totalsByDay = new ArrayList<Map<Long, Totals>>(days);
+        for (var day = 0; day < days; day++) {
+            totalsByDay.add(new HashMap<>());
+        }
+
+        var evaluated = transactionTemplate.execute(status -> {
+            var count = 0L;
+            try (var invoices = invoiceRepository.streamNotFinancedForForecast()) {
+                for (var iterator = invoices.iterator(); iterator.hasNext(); count++) {
+                    forecast(iterator.next(), from, purchasersByCreditor, selector, totalsByDay);
+                }
+            }
+            return count;
+        });
+
+        var forecast = new ArrayList<DailyFinancingAggregate>();
+        for (var day = 0; day < days; day++) {
+            var financingDate = from.plusDays(day);
+            totalsByDay.get(day).forEach((purchaserId, totals) -> forecast.add(new DailyFinancingAggregate(purchaserId,
+                    financingDate, totals.invoiceCount, totals.earlyPaymentAmount,
+                    totals.financingRateSum / totals.invoiceCount)));
+        }
+        forecast.sort(Comparator.comparing(DailyFinancingAggregate::financingDate)
+                .thenComparing(DailyFinancingAggregate::ownerId));
+
+        log.info("Financing of {} days from {} forecast, {} of {} unfinanced invoices expected to be financed, in {} ms",
+                days, from, forecast.stream().mapToLong(DailyFinancingAggregate::invoiceCount).sum(), evaluated,
+                (System.nanoTime() - startedAt) / 1_000_000);
+
+        return forecast;
+    }
+
+    /*
+    The invoice can't be financed anymore once its term is shorter than the shortest minimum term of the purchasers
+    of its creditor, the remaining days are not evaluated.
+     */
+    private static void forecast(UnfinancedInvoiceTuple invoice, LocalDate from,
+                                 Map<Long, CreditorPurchasers> purchasersByCreditor, PurchaserSelector selector,
+                                 List<Map<Long, Totals>> totalsByDay) {
+        var purchasers = purchasersByCreditor.get(invoice.getCreditorId());
+        if (purchasers == null) {
+            return;
+        }
+
+        var termOnFirstDay = (int) (invoice.getMaturityDate().toEpochDay() - from.toEpochDay());
+        int maxFinancingRate = invoice.getMaxFinancingRateInBps();
+        for (var day = 0; day < totalsByDay.size(); day++) {
+            var daysToFinance = termOnFirstDay - day;
+            if (daysToFinance < purchasers.shortestTermInDays()) {
+                return;
+            }
+            var index = selector.select(purchasers, daysToFinance, maxFinancingRate);
+            if (index >= 0) {
+                var candidate = PurchaserSelectionEngine.candidate(invoice.getInvoiceId(), invoice.getValueInCents(),
+                        daysToFinance, purchasers, index);
+                var totals = totalsByDay.get(day).computeIfAbsent(candidate.purchaserId(), purchaserId -> new Totals());
+                totals.invoiceCount++;
+                totals.earlyPaymentAmount += candidate.earlyPaymentAmount();
+                totals.financingRateSum += candidate.financingRate();
+                return;
+            }
+        }
+    }
+}
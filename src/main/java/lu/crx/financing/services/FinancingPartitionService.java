@@ -0,0 +1,226 @@
+package lu.crx.financing.services;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.dtos.FinancingExportFilter;
+import lu.crx.financing.dtos.FinancingExportRow;
+import lu.crx.financing.dtos.FinancingExportTuple;
+import lu.crx.financing.dtos.FinancingRecord;
+import lu.crx.financing.entities.FinancingPartition;
+import lu.crx.financing.repositories.FinancingPartitionRepository;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Monthly partitioning of the financing history.
+ * <p>
+ * H2 has no declarative partitioning, so the current financing stays in the {@code financing} table and every closed
+ * month is rolled over to its own table ({@code financing_yyyy_mm}), registered in the {@link FinancingPartition}
+ * catalog. Readers select the partitions overlapping the requested period only, and an old period is detached
+ * by renaming its table instead of deleting its rows.
+ */
+@Slf4j
+@Service
+@AllArgsConstructor
+public class FinancingPartitionService {
+
+    private static final String DETACHED_SUFFIX = "_detached";
+
+    private static final LocalDate OPEN_START = LocalDate.of(1, 1, 1);
+
+    private static final LocalDate OPEN_END = LocalDate.of(9999, 12, 31);
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final FinancingPartitionRepository financingPartitionRepository;
+
+    private final FinancingProperties financingProperties;
+
+    public static String tableName(YearMonth period) {
+        return "financing_%04d_%02d".formatted(period.getYear(), period.getMonthValue());
+    }
+
+    /**
+     * Moves the financing of a closed month from the {@code financing} table to the partition of the month,
+     * in batches of {@code financing.partition.batch-size} rows, each batch in its own transaction.
+     *
+     * @return number of rows moved
+     */
+    public long rollOver(YearMonth period) {
+        if (!period.isBefore(YearMonth.now())) {
+            throw new IllegalArgumentException("Only closed months can be rolled over, " + period + " is not closed yet");
+        }
+
+        var tableName = tableName(period);
+        log.info("Rolling over financing of {} to {}", period, tableName);
+
+        var partition = financingPartitionRepository.findByPeriodStart(period.atDay(1))
+                .orElseGet(() -> FinancingPartition.builder()
+                        .periodStart(period.atDay(1))
+                        .tableName(tableName)
+                        .build());
+        if (partition.isDetached()) {
+            throw new IllegalStateException("Partition " + period + " is detached");
+        }
+        createPartitionTable(tableName);
+
+        var batchSize = financingProperties.getPartition().getBatchSize();
+        var parameters = Map.of(
+                "from", period.atDay(1),
+                "to", period.atEndOfMonth(),
+                "batchSize", batchSize);
+        var moved = 0L;
+        while (true) {
+            var batch = transactionTemplate.execute(status -> moveBatch(tableName, parameters));
+            moved += batch;
+            if (batch < batchSize) {
+                break;
+            }
+        }
+
+        partition.setRowCount(partition.getRowCount() + moved);
+        financingPartitionRepository.save(partition);
+
+        log.info("{} financing rows of {} moved to {}", moved, period, tableName);
+
+        return moved;
+    }
+
+    /**
+     * Detaches the partition of the given month: it is no longer read and its table is renamed with
+     * a {@code _detached} suffix, to be archived or dropped independently.
+     */
+    public void detach(YearMonth period) {
+        var partition = financingPartitionRepository.findByPeriodStart(period.atDay(1))
+                .orElseThrow(() -> new IllegalArgumentException("No partition for " + period));
+        if (partition.isDetached()) {
+            return;
+        }
+
+        var detachedTableName = partition.getTableName() + DETACHED_SUFFIX;
+        jdbcTemplate.getJdbcTemplate().execute("alter table " + partition.getTableName() + " rename to " + detachedTableName);
+        partition.setTableName(detachedTableName);
+        partition.setDetached(true);
+        financingPartitionRepository.save(partition);
+
+        log.info("Partition {} detached as {}", period, detachedTableName);
+    }
+
+    /**
+     * @return attached partitions overlapping the period, the whole history when the bounds are null
+     */
+    public List<FinancingPartition> getPartitions(LocalDate from, LocalDate to) {
+        var fromPeriod = from == null ? OPEN_START : YearMonth.from(from).atDay(1);
+        var toPeriod = to == null ? OPEN_END : to;
+        return financingPartitionRepository.findByDetachedFalseAndPeriodStartBetweenOrderByPeriodStart(fromPeriod, toPeriod);
+    }
+
+    /**
+     * Single keyset page of a partition, ordered by financing id, see {@code FinancingRepository#findExportPage}.
+     *
+     * @param tableName table of a partition, or any table with the same columns (e.g. {@code financing_archive})
+     */
+    public List<FinancingExportTuple> findExportPage(String tableName, long afterFinancingId,
+                                                     FinancingExportFilter filter, int pageSize) {
+        var parameters = new MapSqlParameterSource()
+                .addValue("afterFinancingId", afterFinancingId)
+                .addValue("purchaserId", filter.purchaserId())
+                .addValue("creditorId", filter.creditorId())
+                .addValue("runId", filter.runId())
+                .addValue("from", filter.from())
+                .addValue("to", filter.to())
+                .addValue("pageSize", pageSize);
+
+        return jdbcTemplate.query("""
+                        select id, invoice_id, creditor_id, purchaser_id, days_to_finance, financing_rate_in_bps, early_payment_amount_in_cents
+                        from %s
+                        where id > :afterFinancingId
+                            and (cast(:purchaserId as bigint) is null or purchaser_id = :purchaserId)
+                            and (cast(:creditorId as bigint) is null or creditor_id = :creditorId)
+                            and (cast(:runId as bigint) is null or run_id = :runId)
+                            and (cast(:from as date) is null or financing_date >= :from)
+                            and (cast(:to as date) is null or financing_date <= :to)
+                        order by id
+                        limit :pageSize""".formatted(tableName),
+                parameters,
+                (rs, rowNum) -> new FinancingExportRow(
+                        rs.getLong("id"),
+                        rs.getLong("invoice_id"),
+                        rs.getLong("creditor_id"),
+                        rs.getLong("purchaser_id"),
+                        rs.getInt("days_to_finance"),
+                        rs.getFloat("financing_rate_in_bps"),
+                        rs.getLong("early_payment_amount_in_cents")));
+    }
+
+    /**
+     * Looks the financing up in all attached partitions.
+     */
+    public Optional<FinancingRecord> findFinancing(long financingId) {
+        return getPartitions(null, null).stream()
+                .flatMap(partition -> jdbcTemplate.query(
+                        "select * from %s where id = :id".formatted(partition.getTableName()),
+                        Map.of("id", financingId),
+                        (rs, rowNum) -> new FinancingRecord(
+                                rs.getLong("id"),
+                                rs.getLong("purchaser_id"),
+                                rs.getObject("run_id", Long.class),
+                                rs.getObject("financing_date", LocalDate.class),
+                                rs.getInt("days_to_finance"),
+                                rs.getFloat("financing_rate_in_bps"),
+                                rs.getLong("early_payment_amount_in_cents"))).stream())
+                .findFirst();
+    }
+
+    private void createPartitionTable(String tableName) {
+        jdbcTemplate.getJdbcTemplate().execute("""
+                create table if not exists %1$s
+                    (id bigint primary key,
+                     invoice_id bigint,
+                     creditor_id bigint,
+                     purchaser_id bigint not null,
+                     run_id bigint,
+                     financing_date date not null,
+                     days_to_finance integer not null,
+                     early_payment_amount_in_cents bigint not null,
+                     financing_rate_in_bps real not null);
+                create index if not exists %1$s_purchaser_idx on %1$s (purchaser_id);
+                create index if not exists %1$s_creditor_idx on %1$s (creditor_id)""".formatted(tableName));
+    }
+
+    private int moveBatch(String tableName, Map<String, ?> parameters) {
+        var ids = jdbcTemplate.queryForList("""
+                select id
+                from financing
+                where financing_date between :from and :to
+                order by id
+                limit :batchSize""", parameters, Long.class);
+        if (ids.isEmpty()) {
+            return 0;
+        }
+
+        var idParameters = Map.of("ids", ids);
+        jdbcTemplate.update("""
+                insert into %s (id, invoice_id, creditor_id, purchaser_id, run_id, financing_date, days_to_finance,
+                                early_payment_amount_in_cents, financing_rate_in_bps)
+                select f.id, i.id, i.creditor_id, f.purchaser_id, f.run_id, f.financing_date, f.days_to_finance,
+                       f.early_payment_amount_in_cents, f.financing_rate_in_bps
+                from financing f
+                left join invoice i on i.financing_id = f.id
+                where f.id in (:ids)""".formatted(tableName), idParameters);
+        jdbcTemplate.update("delete from financing where id in (:ids)", idParameters);
+
+        return ids.size();
+    }
+}
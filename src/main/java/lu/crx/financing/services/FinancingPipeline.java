@@ -0,0 +1,279 @@
+package lu.crx.financing.services;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Pipelined execution of the financing: a reader stage producing chunks of input, a compute stage transforming every
+ * chunk and a writer stage persisting the results, so that the database and the CPU work at the same time and a run
+ * takes about as long as its slowest stage instead of the sum of the stages.
+ * <p>
+ * The stages are connected by bounded queues of chunks, a stage faster than the next one blocks once the queue is full.
+ * The reader and the compute stage run on virtual threads, the writer runs on the calling thread because it persists
+ * within the transaction of the run, which is bound to that thread.
+ * <p>
+ * A failure of any stage stops the other ones and is rethrown by {@link #run}. Every stage counts its items and its busy
+ * time, {@link #getStages()} exposes them together with the depth of the queue feeding the stage.
+ *
+ * @param <I> items read
+ * @param <O> items written
+ */
+public class FinancingPipeline<I, O> {
+
+    private static final long POLL_TIMEOUT_MILLIS = 50;
+
+    private final BlockingQueue<List<I>> readQueue;
+
+    private final BlockingQueue<List<O>> writeQueue;
+
+    private final Stage reader;
+
+    private final Stage compute;
+
+    private final Stage writer;
+
+    /**
+     * @param queueCapacity number of chunks each queue holds before the stage feeding it blocks
+     */
+    public FinancingPipeline(int queueCapacity) {
+        readQueue = new ArrayBlockingQueue<>(queueCapacity);
+        writeQueue = new ArrayBlockingQueue<>(queueCapacity);
+        reader = new Stage("reader", null);
+        compute = new Stage("compute", readQueue);
+        writer = new Stage("writer", writeQueue);
+    }
+
+    /**
+     * @param read    reader stage, passes every chunk it reads to the given consumer
+     * @param compute compute stage, transforms a chunk read into a chunk to write
+     * @param write   writer stage, persists a chunk and returns the number of persisted items
+     * @return sum of the numbers returned by the writer stage
+     */
+    public int run(Consumer<Consumer<List<I>>> read, Function<List<I>, List<O>> compute, ToIntFunction<List<O>> write) {
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var readerTask = executor.submit(() -> read(read));
+            var computeTask = executor.submit(() -> compute(compute, readerTask));
+
+            int written;
+            try {
+                written = write(write, computeTask);
+            } catch (RuntimeException | Error e) {
+                readerTask.cancel(true);
+                computeTask.cancel(true);
+                throw e;
+            }
+
+            // a failed compute stage leaves the reader blocked on a full queue
+            await(computeTask, readerTask);
+            await(readerTask, null);
+
+            return written;
+        }
+    }
+
+    /**
+     * @return reader, compute and writer stages, in this order
+     */
+    public List<Stage> getStages() {
+        return List.of(reader, compute, writer);
+    }
+
+    private Void read(Consumer<Consumer<List<I>>> read) {
+        reader.start();
+        var resumedAt = new long[]{System.nanoTime()};
+        read.accept(chunk -> {
+            var readAt = System.nanoTime();
+            reader.completed(chunk.size(), readAt - resumedAt[0]);
+            try {
+                readQueue.put(chunk);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Reader stage interrupted", e);
+            }
+            compute.queued();
+            resumedAt[0] = System.nanoTime();
+        });
+        reader.busy(System.nanoTime() - resumedAt[0]);
+        reader.stop();
+        return null;
+    }
+
+    private Void compute(Function<List<I>, List<O>> function, Future<?> upstream) throws InterruptedException {
+        compute.start();
+        for (var chunk = take(readQueue, upstream); chunk != null; chunk = take(readQueue, upstream)) {
+            var startedAt = System.nanoTime();
+            var result = function.apply(chunk);
+            compute.completed(result.size(), System.nanoTime() - startedAt);
+            writeQueue.put(result);
+            writer.queued();
+        }
+        compute.stop();
+        return null;
+    }
+
+    private int write(ToIntFunction<List<O>> function, Future<?> upstream) {
+        writer.start();
+        var written = 0;
+        try {
+            for (var chunk = take(writeQueue, upstream); chunk != null; chunk = take(writeQueue, upstream)) {
+                var startedAt = System.nanoTime();
+                var persisted = function.applyAsInt(chunk);
+                writer.completed(persisted, System.nanoTime() - startedAt);
+                written += persisted;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Writer stage interrupted", e);
+        }
+        writer.stop();
+        return written;
+    }
+
+    /**
+     * @return next chunk of the queue, null once the stage feeding it is done and all its chunks are taken
+     */
+    private static <T> List<T> take(BlockingQueue<List<T>> queue, Future<?> upstream) throws InterruptedException {
+        while (true) {
+            var chunk = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            if (chunk != null) {
+                return chunk;
+            }
+            if (upstream.isDone() && queue.isEmpty()) {
+                return null;
+            }
+        }
+    }
+
+    private static void await(Future<?> task, Future<?> cancelOnFailure) {
+        try {
+            task.get();
+        } catch (ExecutionException e) {
+            if (cancelOnFailure != null) {
+                cancelOnFailure.cancel(true);
+            }
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException("Financing pipeline failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Financing pipeline interrupted", e);
+        }
+    }
+
+    /**
+     * Metrics of a single stage, updated by the thread running the stage and readable from any thread.
+     */
+    public static class Stage {
+
+        private final String name;
+
+        private final BlockingQueue<?> input;
+
+        private final AtomicLong items = new AtomicLong();
+
+        private final AtomicLong chunks = new AtomicLong();
+
+        private final AtomicLong busyNanos = new AtomicLong();
+
+        private final AtomicLong maxQueueDepth = new AtomicLong();
+
+        private volatile long startedAt;
+
+        private volatile long stoppedAt;
+
+        private Stage(String name, BlockingQueue<?> input) {
+            this.name = name;
+            this.input = input;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return number of chunks waiting in the queue feeding the stage, always 0 for the reader
+         */
+        public int getQueueDepth() {
+            return input == null ? 0 : input.size();
+        }
+
+        /**
+         * @return highest number of chunks seen waiting in the queue feeding the stage
+         */
+        public long getMaxQueueDepth() {
+            return maxQueueDepth.get();
+        }
+
+        /**
+         * @return number of items produced by the stage: candidates read, candidates selected or invoices financed
+         */
+        public long getItems() {
+            return items.get();
+        }
+
+        public long getChunks() {
+            return chunks.get();
+        }
+
+        /**
+         * @return time spent processing, i.e. not waiting on the queues
+         */
+        public Duration getBusyTime() {
+            return Duration.ofNanos(busyNanos.get());
+        }
+
+        /**
+         * @return items produced per second since the stage started
+         */
+        public double getThroughput() {
+            if (startedAt == 0) {
+                return 0;
+            }
+            var elapsed = (stoppedAt == 0 ? System.nanoTime() : stoppedAt) - startedAt;
+            return elapsed <= 0 ? 0 : items.get() * 1e9 / elapsed;
+        }
+
+        @Override
+        public String toString() {
+            return "%s: %d items in %d chunks, %.1f items/s, busy %d ms, queue depth %d (max %d)".formatted(
+                    name, getItems(), getChunks(), getThroughput(), getBusyTime().toMillis(), getQueueDepth(),
+                    getMaxQueueDepth());
+        }
+
+        private void start() {
+            startedAt = System.nanoTime();
+        }
+
+        private void stop() {
+            stoppedAt = System.nanoTime();
+        }
+
+        private void completed(int chunkItems, long nanos) {
+            items.addAndGet(chunkItems);
+            chunks.incrementAndGet();
+            busy(nanos);
+        }
+
+        private void busy(long nanos) {
+            busyNanos.addAndGet(nanos);
+        }
+
+        private void queued() {
+            maxQueueDepth.accumulateAndGet(getQueueDepth(), Math::max);
+        }
+    }
+}
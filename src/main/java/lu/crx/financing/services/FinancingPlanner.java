@@ -0,0 +1,168 @@
+package lu.crx.financing.services;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.dtos.FinancingPlan;
+import lu.crx.financing.dtos.FinancingStatistics;
+import lu.crx.financing.entities.FinancingRun;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Cost-based choice of the query mode and the chunk size of a financing run.
+ * <p>
+ * The fastest mode depends on the data: the modes selecting the purchaser in SQL pay per unfinanced invoice,
+ * the ones reducing all candidates pay per invoice and financing setting of its creditor, and the equivalence classes
+ * pay per distinct creditor and maturity date. Before a run the planner gathers {@link FinancingStatistics}
+ * with a single aggregate query over the unfinanced invoices and estimates the duration of every mode of
+ * {@code financing.planner.costs} with its linear cost model, calibrated with the FinancingServicePerformanceTest.
+ * The mode with the lowest estimate is run.
+ * <p>
+ * The chunk size of every mode is the one with the lowest estimate between {@code financing.planner.min-chunk-size}
+ * and {@code financing.planner.max-chunk-size}: the benchmarks show an overhead per chunk, while larger chunks aren't
+ * faster and hold more locks and entities. The pipelined mode is split into at least
+ * {@code financing.pipeline.queue-capacity} chunks, so that its stages overlap.
+ * <p>
+ * The plan is logged before the run and its estimate next to the actual duration after it, the chunk size is recorded
+ * on the run, so that the model can be checked against the runs and its coefficients refined.
+ */
+@Slf4j
+@Service
+@AllArgsConstructor
+public class FinancingPlanner {
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    private final FinancingService financingService;
+
+    private final FinancingProperties financingProperties;
+
+    /**
+     * Plans the run and finances all eligible invoices as planned.
+     *
+     * @return the completed run
+     */
+    public FinancingRun finance() {
+        var plan = plan();
+        var run = financingService.finance(plan.mode(), plan.chunkSize());
+        var duration = Duration.between(run.getStartedAt(), run.getCompletedAt());
+
+        log.info("Financing run {} in mode {} completed in {} ms, estimated {} ms, {} invoices financed", run.getId(),
+                plan.mode(), duration.toMillis(), plan.estimatedDuration().toMillis(), run.getFinancedInvoices());
+
+        return run;
+    }
+
+    public FinancingPlan plan() {
+        return plan(statistics());
+    }
+
+    /**
+     * @throws IllegalStateException when no cost model is configured
+     */
+    public FinancingPlan plan(FinancingStatistics statistics) {
+        var costs = financingProperties.getPlanner().getCosts();
+        if (costs.isEmpty()) {
+            throw new IllegalStateException("No cost model configured in financing.planner.costs");
+        }
+
+        var estimates = new EnumMap<FinancingService.QueryMode, Duration>(FinancingService.QueryMode.class);
+        var chunkSizes = new EnumMap<FinancingService.QueryMode, Integer>(FinancingService.QueryMode.class);
+        costs.forEach((mode, cost) -> {
+            var chunkSize = chunkSize(mode, cost, statistics);
+            chunkSizes.put(mode, chunkSize);
+            estimates.put(mode, estimate(cost, statistics, chunkSize));
+        });
+        var mode = estimates.entrySet().stream()
+                .min(Map.Entry.comparingByValue())
+                .orElseThrow()
+                .getKey();
+        var plan = new FinancingPlan(mode, chunkSizes.get(mode), estimates.get(mode), estimates, statistics);
+
+        log.info("Financing plan: mode {} in chunks of {} invoices, estimated {} ms, {}, estimates {}", plan.mode(),
+                plan.chunkSize(), plan.estimatedDuration().toMillis(), statistics, estimates);
+
+        return plan;
+    }
+
+    /*
+    A single scan of the unfinanced invoices grouped by equivalence class, the count of all invoices is read from
+    the table metadata by H2.
+     */
+    public FinancingStatistics statistics() {
+        return jdbcTemplate.queryForObject("""
+                        with classes as
+                            (select i.creditor_id,
+                                    i.maturity_date,
+                                    count(*) as invoice_count
+                             from invoice i
+                             where i.financing_id is null
+                                 and (i.next_eligibility_date is null or i.next_eligibility_date <= current_date)
+                                 and not i.permanently_ineligible
+                             group by i.creditor_id,
+                                      i.maturity_date)
+                        select coalesce(sum(c.invoice_count), 0) as unfinanced_invoices,
+                               count(distinct c.creditor_id) as creditors,
+                               (select count(*)
+                                from purchaser_financing_settings pfs
+                                where pfs.creditor_id in (select creditor_id from classes)) as purchaser_settings,
+                               count(distinct c.maturity_date) as maturity_dates,
+                               count(*) as equivalence_classes,
+                               (select count(*) from invoice) as invoices
+                        from classes c""", Map.of(),
+                (rs, rowNum) -> new FinancingStatistics(
+                        rs.getLong("unfinanced_invoices"),
+                        rs.getLong("creditors"),
+                        rs.getLong("purchaser_settings"),
+                        rs.getLong("maturity_dates"),
+                        rs.getLong("equivalence_classes"),
+                        rs.getLong("invoices")));
+    }
+
+    /*
+    The estimate depends on the chunk size through the number of chunks only, so every number of chunks from the fewest
+    chunks of max-chunk-size invoices to the most chunks of min-chunk-size invoices is estimated with chunks of even
+    size, and the cheapest one is taken, the fewest chunks on a tie. The pipelined mode is split into at least
+    queue-capacity chunks, the overlap of its stages is not part of the model.
+     */
+    private int chunkSize(FinancingService.QueryMode mode, FinancingProperties.Cost cost, FinancingStatistics statistics) {
+        var planner = financingProperties.getPlanner();
+        var invoices = statistics.unfinancedInvoices();
+        var maxChunkSize = mode == FinancingService.QueryMode.QUERY_FOR_ALL_PIPELINED
+                ? Math.min(planner.getMaxChunkSize(), ceilDiv(invoices, financingProperties.getPipeline().getQueueCapacity()))
+                : planner.getMaxChunkSize();
+        var fewestChunks = Math.max(1, ceilDiv(invoices, Math.max(planner.getMinChunkSize(), maxChunkSize)));
+        var mostChunks = Math.max(fewestChunks, ceilDiv(invoices, planner.getMinChunkSize()));
+
+        var chunkSize = 0;
+        Duration lowestEstimate = null;
+        for (var chunks = fewestChunks; chunks <= mostChunks; chunks++) {
+            var evenChunkSize = (int) Math.max(planner.getMinChunkSize(), ceilDiv(invoices, chunks));
+            var estimate = estimate(cost, statistics, evenChunkSize);
+            if (lowestEstimate == null || estimate.compareTo(lowestEstimate) < 0) {
+                chunkSize = evenChunkSize;
+                lowestEstimate = estimate;
+            }
+        }
+        return chunkSize;
+    }
+
+    private static long ceilDiv(long dividend, long divisor) {
+        return (dividend + divisor - 1) / divisor;
+    }
+
+    private static Duration estimate(FinancingProperties.Cost cost, FinancingStatistics statistics, int chunkSize) {
+        var chunks = ceilDiv(statistics.unfinancedInvoices(), chunkSize);
+        var nanos = cost.getFixed().toNanos()
+                + cost.getPerInvoice().toNanos() * (double) statistics.unfinancedInvoices()
+                + cost.getPerCandidate().toNanos() * statistics.candidates()
+                + cost.getPerEquivalenceClass().toNanos() * (double) statistics.equivalenceClasses()
+                + cost.getPerChunk().toNanos() * (double) chunks;
+        return Duration.ofNanos((long) nanos);
+    }
+}
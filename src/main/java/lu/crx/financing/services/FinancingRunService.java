@@ -0,0 +1,48 @@
+package lu.crx.financing.services;
+
+import jakarta.transaction.Transactional;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.entities.FinancingRun;
+import lu.crx.financing.repositories.FinancingRunRepository;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * Bookkeeping of the financing runs. A run is started in a transaction of its own, so that it is visible while it is
+ * in progress and stays recorded when the financing fails. It is completed within the transaction of the financing,
+ * so that a completed run, its financed invoices and its settings fingerprint are committed together with
+ * the financing: a run whose financing rolled back stays recorded without a completion time.
+ */
+@Slf4j
+@Service
+@AllArgsConstructor
+public class FinancingRunService {
+
+    private final FinancingRunRepository financingRunRepository;
+
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    public FinancingRun start(String mode, int chunkSize) {
+        var run = financingRunRepository.save(FinancingRun.builder()
+                .mode(mode)
+                .chunkSize(chunkSize)
+                .financingDate(LocalDate.now())
+                .startedAt(Instant.now())
+                .build());
+
+        log.info("Financing run {} started in mode {}, chunks of {} invoices", run.getId(), mode, chunkSize);
+
+        return run;
+    }
+
+    @Transactional
+    public void complete(FinancingRun run, int financedInvoices) {
+        run.setCompletedAt(Instant.now());
+        run.setFinancedInvoices(financedInvoices);
+        financingRunRepository.save(run);
+
+        log.info("Financing run {} completed, {} invoices financed", run.getId(), financedInvoices);
+    }
+}
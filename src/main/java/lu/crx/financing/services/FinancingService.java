@@ -1,18 +1,32 @@
 package lu.crx.financing.services;
 
+import jakarta.persistence.EntityManager;
 import jakarta.transaction.Transactional;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.dtos.EquivalenceClassTuple;
+import lu.crx.financing.dtos.FinancingCandidate;
 import lu.crx.financing.dtos.InvoiceTuple;
 import lu.crx.financing.entities.Financing;
+import lu.crx.financing.entities.FinancingRun;
 import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.monitoring.FinancingChunkEvent;
+import lu.crx.financing.monitoring.FinancingQueryEvent;
+import lu.crx.financing.monitoring.FinancingRunEvent;
 import lu.crx.financing.repositories.InvoiceRepository;
 import lu.crx.financing.repositories.PurchaserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -21,7 +35,8 @@ import java.util.stream.Collectors;
 public class FinancingService {
 
     public enum QueryMode {
-        QUERY_FOR_ALL, QUERY_FOR_LOWEST_RATE
+        QUERY_FOR_ALL, QUERY_FOR_LOWEST_RATE, QUERY_FOR_ALL_BOUNDED_MEMORY, QUERY_FOR_EQUIVALENCE_CLASSES, QUERY_FOR_ALL_PIPELINED,
+        QUERY_FOR_LOWEST_RATE_IN_MEMORY
     }
 
     @Autowired
@@ -30,31 +45,266 @@ public class FinancingService {
     @Autowired
     private PurchaserRepository purchaserRepository;
 
+    @Autowired
+    private QueryPlanService queryPlanService;
+
+    @Autowired
+    private FinancingAggregateService financingAggregateService;
+
+    @Autowired
+    private FinancingProperties financingProperties;
+
+    @Autowired
+    private FinancingRunService financingRunService;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EligibilityCalendarService eligibilityCalendarService;
+
+    @Autowired
+    private EquivalenceClassFinancingService equivalenceClassFinancingService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private InvoiceClaimService invoiceClaimService;
+
+    @Autowired
+    private PurchaserSelectionEngine purchaserSelectionEngine;
+
     @Transactional
     public void finance(QueryMode mode) {
+        finance(mode, financingProperties.getChunkSize());
+    }
+
+    /**
+     * Finances all eligible invoices in the given mode, claiming and persisting them in chunks of the given size
+     * instead of financing.chunk-size, e.g. as planned by the {@link FinancingPlanner}.
+     *
+     * @return the completed run
+     */
+    @Transactional
+    public FinancingRun finance(QueryMode mode, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive, was " + chunkSize);
+        }
+
         log.info("Financing started");
 
-        var invoicesToFinance = switch (mode) {
-            case QUERY_FOR_ALL -> getInvoicesToFinanceForAllPurchasers();
-            case QUERY_FOR_LOWEST_RATE -> getInvoicesToFinanceForLowestRatePurchaser();
+        var runEvent = FinancingRunEvent.start(mode.name());
+        var run = financingRunService.start(mode.name(), chunkSize);
+        eligibilityCalendarService.refresh(run);
+
+        queryPlanService.logFinancingQueryPlans(Map.of());
+
+        var financed = switch (mode) {
+            case QUERY_FOR_ALL -> finance(getInvoicesToFinanceForAllPurchasers(run), run, chunkSize);
+            case QUERY_FOR_LOWEST_RATE -> finance(getInvoicesToFinanceForLowestRatePurchaser(run), run, chunkSize);
+            case QUERY_FOR_ALL_BOUNDED_MEMORY -> financeWithBoundedMemory(run, chunkSize);
+            case QUERY_FOR_EQUIVALENCE_CLASSES -> financeByEquivalenceClasses(run, chunkSize);
+            case QUERY_FOR_ALL_PIPELINED -> financePipelined(run, chunkSize);
+            case QUERY_FOR_LOWEST_RATE_IN_MEMORY -> finance(getInvoicesToFinanceForLowestRatePurchaserInMemory(run), run, chunkSize);
         };
 
-        log.info("{} invoices to finance found", invoicesToFinance.size());
-        invoicesToFinance.forEach(i ->
-                log.info("invoiceId: {}. purchaserId : {}, daysToFinance: {}, financingRate: {}, earlyPaymentAmount: {}",
-                        i.getInvoiceId(), i.getPurchaserId(), i.getDaysToFinance(), i.getFinancingRate(), i.getEarlyPaymentAmount()));
+        financingAggregateService.recordRun(run);
+        eligibilityCalendarService.schedule();
 
-        invoiceRepository.saveAll(getInvoicesToSave(invoicesToFinance));
+        financingRunService.complete(run, financed);
+        runEvent.complete(run, financed);
 
         log.info("Financing completed");
+
+        return run;
     }
 
-    private List<Invoice> getInvoicesToSave(List<InvoiceTuple> invoicesToFinance) {
+    private int finance(List<InvoiceTuple> invoicesToFinance, FinancingRun run, int chunkSize) {
+        log.info("{} invoices to finance found", invoicesToFinance.size());
+
+        return persist(invoicesToFinance.iterator(), run, chunkSize);
+    }
+
+    /*
+    The candidates are streamed ordered by invoice and reduced to the best purchaser per invoice on the fly, so only
+    the reduced candidates are held, up to financing.bounded-memory.heap-budget, and the rest is spilled to disk.
+    They are persisted once the stream is closed, the query cursor and the updates of the invoices never overlap.
+     */
+    private int financeWithBoundedMemory(FinancingRun run, int chunkSize) {
+        try (var buffer = new SpillingCandidateBuffer(financingProperties.getBoundedMemory().getHeapBudget().toBytes())) {
+            var queryEvent = FinancingQueryEvent.start(run, "streamNotFinancedForAllPurchasers");
+            var reducer = new TopOneReducer(buffer::add);
+            try (var candidates = invoiceRepository.streamNotFinancedForAllPurchasers()) {
+                candidates.forEach(reducer);
+                reducer.finish();
+            }
+            queryEvent.complete(reducer.getAccepted());
+
+            log.info("{} invoices to finance found, {} runs spilled to disk", buffer.size(), buffer.spilledRuns());
+
+            return persist(buffer.iterator(), run, chunkSize);
+        }
+    }
+
+    /*
+    The purchaser is selected once per creditor and maturity date and the whole class is financed by set based statements,
+    in chunks of classes holding up to chunkSize invoices (a larger class makes a chunk on its own).
+    The invoices are never loaded. The persistence context is flushed before the statements and cleared after them,
+    the invoices it may hold are stale afterwards.
+     */
+    private int financeByEquivalenceClasses(FinancingRun run, int chunkSize) {
+        var queryEvent = FinancingQueryEvent.start(run, "findWinnersOfEquivalenceClasses");
+        var equivalenceClasses = invoiceRepository.findWinnersOfEquivalenceClasses();
+        queryEvent.complete(equivalenceClasses.size());
+
+        log.info("{} equivalence classes to finance found", equivalenceClasses.size());
+
+        entityManager.flush();
+
+        var financed = 0;
+        var chunks = 0;
+        var chunk = new ArrayList<EquivalenceClassTuple>();
+        var chunkInvoices = 0L;
+        for (var iterator = equivalenceClasses.iterator(); iterator.hasNext(); ) {
+            var c = iterator.next();
+            log.info("creditorId: {}, maturityDate: {}, invoiceCount: {}, purchaserId: {}, daysToFinance: {}, financingRate: {}",
+                    c.getCreditorId(), c.getMaturityDate(), c.getInvoiceCount(), c.getPurchaserId(), c.getDaysToFinance(),
+                    c.getFinancingRate());
+            if (!chunk.isEmpty() && chunkInvoices + c.getInvoiceCount() > chunkSize) {
+                financed += persistEquivalenceClasses(chunk, chunkInvoices, chunks++, run);
+                chunk.clear();
+                chunkInvoices = 0;
+            }
+            chunk.add(c);
+            chunkInvoices += c.getInvoiceCount();
+
+            if (!iterator.hasNext()) {
+                financed += persistEquivalenceClasses(chunk, chunkInvoices, chunks++, run);
+            }
+        }
+
+        entityManager.clear();
+
+        return financed;
+    }
+
+    private int persistEquivalenceClasses(List<EquivalenceClassTuple> chunk, long invoices, int chunkNumber,
+                                          FinancingRun run) {
+        var chunkEvent = FinancingChunkEvent.start(run, chunkNumber, (int) invoices);
+        var financed = equivalenceClassFinancingService.persist(chunk, run);
+        chunkEvent.complete(financed);
+        return financed;
+    }
+
+    /*
+    The candidates are read in chunks of chunkSize invoices, reduced to the best purchaser per invoice and
+    persisted by the stages of a FinancingPipeline, so reading the next chunk, reducing the current one and persisting
+    the previous one overlap. The reader streams the candidates in a transaction of its own, the writer persists
+    in the transaction of the run.
+     */
+    private int financePipelined(FinancingRun run, int chunkSize) {
+        var pipeline = new FinancingPipeline<FinancingCandidate, FinancingCandidate>(
+                financingProperties.getPipeline().getQueueCapacity());
+        var chunks = new int[1];
+
+        var financed = pipeline.run(
+                chunkConsumer -> readCandidates(run, chunkSize, chunkConsumer),
+                FinancingService::selectPurchasers,
+                chunk -> persistChunk(chunk, run, chunks[0]++));
+
+        pipeline.getStages().forEach(stage -> log.info("Financing pipeline stage {}", stage));
+
+        return financed;
+    }
+
+    private void readCandidates(FinancingRun run, int chunkSize, Consumer<List<FinancingCandidate>> chunkConsumer) {
+        transactionTemplate.executeWithoutResult(status -> {
+            var queryEvent = FinancingQueryEvent.start(run, "streamNotFinancedForAllPurchasers");
+            var accepted = 0L;
+            try (var candidates = invoiceRepository.streamNotFinancedForAllPurchasers()) {
+                var chunk = new ArrayList<FinancingCandidate>();
+                var invoices = 0;
+                for (var iterator = candidates.iterator(); iterator.hasNext(); accepted++) {
+                    var candidate = FinancingCandidate.of(iterator.next());
+                    if (chunk.isEmpty() || candidate.invoiceId() != chunk.getLast().invoiceId()) {
+                        if (invoices == chunkSize) {
+                            chunkConsumer.accept(chunk);
+                            chunk = new ArrayList<>();
+                            invoices = 0;
+                        }
+                        invoices++;
+                    }
+                    chunk.add(candidate);
+                }
+                if (!chunk.isEmpty()) {
+                    chunkConsumer.accept(chunk);
+                }
+            }
+            queryEvent.complete(accepted);
+        });
+    }
+
+    /*
+    Compute stage of the pipelined mode, allocation per invoice is guarded by SelectionAllocationTest.
+     */
+    static List<FinancingCandidate> selectPurchasers(List<FinancingCandidate> candidates) {
+        var selected = new ArrayList<FinancingCandidate>();
+        var reducer = new TopOneReducer(selected::add);
+        candidates.forEach(reducer);
+        reducer.finish();
+        return selected;
+    }
+
+    /*
+    Persists the invoices to finance in chunks of chunkSize, the persistence context is flushed and cleared
+    after every chunk so that it doesn't grow with the number of financed invoices. The daily totals are updated once
+    the run has persisted all its chunks.
+     */
+    private int persist(Iterator<? extends InvoiceTuple> invoicesToFinance, FinancingRun run, int chunkSize) {
+        var financed = 0;
+        var chunks = 0;
+        var chunk = new ArrayList<InvoiceTuple>(chunkSize);
+        while (invoicesToFinance.hasNext()) {
+            chunk.add(invoicesToFinance.next());
+
+            if (chunk.size() == chunkSize || !invoicesToFinance.hasNext()) {
+                financed += persistChunk(chunk, run, chunks++);
+                chunk.clear();
+            }
+        }
+        return financed;
+    }
+
+    /*
+    Only the invoices claimed by the run are persisted, the ones financed or claimed by a concurrent run are skipped
+    and counted as lost races of the run, see InvoiceClaimService.
+     */
+    private int persistChunk(List<? extends InvoiceTuple> chunk, FinancingRun run, int chunkNumber) {
+        chunk.forEach(i -> log.info("invoiceId: {}. purchaserId : {}, daysToFinance: {}, financingRate: {}, earlyPaymentAmount: {}",
+                i.getInvoiceId(), i.getPurchaserId(), i.getDaysToFinance(), i.getFinancingRate(), i.getEarlyPaymentAmount()));
+
+        var chunkEvent = FinancingChunkEvent.start(run, chunkNumber, chunk.size());
+        var claimed = invoiceClaimService.claim(chunk.stream().map(InvoiceTuple::getInvoiceId).toList());
+        var claimedChunk = chunk.stream().filter(i -> claimed.contains(i.getInvoiceId())).toList();
+        run.setLostRaces(run.getLostRaces() + chunk.size() - claimedChunk.size());
+
+        var invoicesToSave = getInvoicesToSave(claimedChunk, run);
+        invoiceRepository.saveAll(invoicesToSave);
+        entityManager.flush();
+        entityManager.clear();
+        chunkEvent.complete(invoicesToSave.size());
+        return invoicesToSave.size();
+    }
+
+    private List<Invoice> getInvoicesToSave(List<? extends InvoiceTuple> invoicesToFinance, FinancingRun run) {
         return invoicesToFinance.stream()
                 .map(invoiceTuple -> {
                     var purchaser = purchaserRepository.findById(invoiceTuple.getPurchaserId());
                     var invoice = invoiceRepository.findById(invoiceTuple.getInvoiceId());
                     var financingBuilder = Financing.builder()
+                            .run(run)
+                            .financingDate(run.getFinancingDate())
                             .daysToFinance(invoiceTuple.getDaysToFinance())
                             .financingRateInBps(invoiceTuple.getFinancingRate())
                             .earlyPaymentAmountInCents(invoiceTuple.getEarlyPaymentAmount());
@@ -71,8 +321,16 @@ public class FinancingService {
     /*
     Alternative version of extracting purchasers with the lowest rate. To be tested for performance.
      */
-    private List<InvoiceTuple> getInvoicesToFinanceForAllPurchasers() {
-        return invoiceRepository.findNotFinancedForAllPurchasers().stream()
+    private List<InvoiceTuple> getInvoicesToFinanceForAllPurchasers(FinancingRun run) {
+        return selectBestPurchasers(query(run, "findNotFinancedForAllPurchasers", invoiceRepository::findNotFinancedForAllPurchasers));
+    }
+
+    /*
+    Keeps the candidate with the highest early payment amount per invoice, the first one on a tie.
+    Allocation per invoice is guarded by SelectionAllocationTest.
+     */
+    static List<InvoiceTuple> selectBestPurchasers(List<InvoiceTuple> invoiceTuples) {
+        return invoiceTuples.stream()
                 .collect(Collectors.groupingBy(InvoiceTuple::getInvoiceId)).values().stream()
                 .map(invoiceTuple -> {
                     var maxEarlyPaymentAmount = invoiceTuple.stream()
@@ -87,7 +345,18 @@ public class FinancingService {
                 .toList();
     }
 
-    private List<InvoiceTuple> getInvoicesToFinanceForLowestRatePurchaser() {
-        return invoiceRepository.findNotFinancedForLowestRatePurchaser();
+    private List<InvoiceTuple> getInvoicesToFinanceForLowestRatePurchaser(FinancingRun run) {
+        return query(run, "findNotFinancedForLowestRatePurchaser", invoiceRepository::findNotFinancedForLowestRatePurchaser);
+    }
+
+    private List<InvoiceTuple> getInvoicesToFinanceForLowestRatePurchaserInMemory(FinancingRun run) {
+        return query(run, "findNotFinancedForSelection", purchaserSelectionEngine::findNotFinancedForLowestRatePurchaser);
+    }
+
+    private static List<InvoiceTuple> query(FinancingRun run, String queryName, Supplier<List<InvoiceTuple>> query) {
+        var event = FinancingQueryEvent.start(run, queryName);
+        var invoiceTuples = query.get();
+        event.complete(invoiceTuples.size());
+        return invoiceTuples;
     }
 }
@@ -0,0 +1,76 @@
+package lu.crx.financing.services;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Ids of the creditors or debtors by name, looked up by the UTF-8 bytes of the name as read by {@link CsvLineReader},
+ * without decoding a string per lookup. Open addressing with linear probing, filled once and read only afterward.
+ */
+final class IdsByName {
+
+    static final long UNKNOWN = -1;
+
+    /**
+     * Returned for a name shared by more ids, it can't be resolved.
+     */
+    static final long AMBIGUOUS = -2;
+
+    private final byte[][] names;
+
+    private final long[] ids;
+
+    private final int mask;
+
+    IdsByName(int expectedSize) {
+        var capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1;
+        names = new byte[capacity][];
+        ids = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * @throws IllegalStateException when more names are put than expected
+     */
+    void put(String name, long id) {
+        var bytes = name.getBytes(StandardCharsets.UTF_8);
+        var slot = hash(bytes, 0, bytes.length) & mask;
+        for (var probes = 0; probes <= mask; probes++, slot = (slot + 1) & mask) {
+            if (names[slot] == null) {
+                names[slot] = bytes;
+                ids[slot] = id;
+                return;
+            }
+            if (Arrays.equals(names[slot], bytes)) {
+                ids[slot] = AMBIGUOUS;
+                return;
+            }
+        }
+        throw new IllegalStateException("No room for " + name + ", more names than expected");
+    }
+
+    /**
+     * @return id of the name, {@link #UNKNOWN} or {@link #AMBIGUOUS}
+     */
+    long get(byte[] bytes, int offset, int length) {
+        var slot = hash(bytes, offset, length) & mask;
+        for (var probes = 0; probes <= mask; probes++, slot = (slot + 1) & mask) {
+            var name = names[slot];
+            if (name == null) {
+                return UNKNOWN;
+            }
+            if (Arrays.equals(name, 0, name.length, bytes, offset, offset + length)) {
+                return ids[slot];
+            }
+        }
+        return UNKNOWN;
+    }
+
+    private static int hash(byte[] bytes, int offset, int length) {
+        var hash = 1;
+        for (var i = offset; i < offset + length; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+}
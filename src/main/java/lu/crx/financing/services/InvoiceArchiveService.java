@@ -0,0 +1,159 @@
+package lu.crx.financing.services;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.dtos.FinancingRecord;
+import lu.crx.financing.dtos.InvoiceRecord;
+import lu.crx.financing.repositories.ArchivedFinancingRepository;
+import lu.crx.financing.repositories.ArchivedInvoiceRepository;
+import lu.crx.financing.repositories.FinancingRepository;
+import lu.crx.financing.repositories.InvoiceRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.Optional;
+
+/**
+ * Archival of matured invoices. An invoice past its maturity date can never be financed again, so it is moved with its
+ * financing from the invoice and financing tables to {@code invoice_archive} and {@code financing_archive}, keeping
+ * only open invoices in the tables read by the financing queries.
+ * <p>
+ * Archived records are still reachable through the read-through lookups {@link #findInvoice} and {@link #findFinancing}.
+ */
+@Slf4j
+@Service
+@AllArgsConstructor
+public class InvoiceArchiveService {
+
+    public static final String FINANCING_ARCHIVE_TABLE = "financing_archive";
+
+    private final ArchivedInvoiceRepository archivedInvoiceRepository;
+
+    private final ArchivedFinancingRepository archivedFinancingRepository;
+
+    private final InvoiceRepository invoiceRepository;
+
+    private final FinancingRepository financingRepository;
+
+    private final FinancingPartitionService financingPartitionService;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final FinancingProperties financingProperties;
+
+    /**
+     * Archives the invoices matured before today, see {@link #archive(LocalDate, boolean)}.
+     */
+    public long archiveMatured(boolean throttled) {
+        return archive(LocalDate.now(), throttled);
+    }
+
+    /**
+     * Moves the invoices with maturity date before the given date, and their financing, to the archive tables in batches
+     * of {@code financing.archive.batch-size} invoices, each batch in its own transaction.
+     *
+     * @param throttled pause for {@code financing.archive.throttle-pause} between batches, to leave room for the financing
+     * @return number of archived invoices
+     */
+    public long archive(LocalDate maturedBefore, boolean throttled) {
+        log.info("Archival of invoices matured before {} started{}", maturedBefore, throttled ? " (throttled)" : "");
+
+        var batchSize = financingProperties.getArchive().getBatchSize();
+        var archived = 0L;
+        while (true) {
+            var batch = transactionTemplate.execute(status -> archiveBatch(maturedBefore, batchSize));
+            archived += batch;
+            log.debug("{} invoices archived", archived);
+            if (batch < batchSize) {
+                break;
+            }
+            if (throttled) {
+                pause();
+            }
+        }
+
+        log.info("Archival completed, {} invoices archived", archived);
+
+        return archived;
+    }
+
+    /**
+     * Looks the invoice up in the invoice table first and in the archive when not found there.
+     */
+    public Optional<InvoiceRecord> findInvoice(long invoiceId) {
+        var invoice = invoiceRepository.findById(invoiceId)
+                .map(present -> new InvoiceRecord(
+                        present.getId(),
+                        present.getCreditor().getId(),
+                        present.getDebtor() == null ? null : present.getDebtor().getId(),
+                        present.getMaturityDate(),
+                        present.getValueInCents(),
+                        false,
+                        // the id of a lazy association is read without loading it, the financing may be in a partition
+                        present.getFinancing() == null ? null : findFinancing(present.getFinancing().getId()).orElse(null)));
+        if (invoice.isPresent()) {
+            return invoice;
+        }
+
+        return archivedInvoiceRepository.findById(invoiceId)
+                .map(archived -> new InvoiceRecord(
+                        archived.getId(),
+                        archived.getCreditorId(),
+                        archived.getDebtorId(),
+                        archived.getMaturityDate(),
+                        archived.getValueInCents(),
+                        true,
+                        archived.getFinancingId() == null ? null : findFinancing(archived.getFinancingId()).orElse(null)));
+    }
+
+    /**
+     * Looks the financing up in the financing table, then in the archive and finally in the monthly partitions.
+     */
+    public Optional<FinancingRecord> findFinancing(long financingId) {
+        var financing = financingRepository.findById(financingId)
+                .map(present -> new FinancingRecord(
+                        present.getId(),
+                        present.getPurchaser().getId(),
+                        present.getRun().getId(),
+                        present.getFinancingDate(),
+                        present.getDaysToFinance(),
+                        present.getFinancingRateInBps(),
+                        present.getEarlyPaymentAmountInCents()))
+                .or(() -> archivedFinancingRepository.findById(financingId)
+                        .map(archived -> new FinancingRecord(
+                                archived.getId(),
+                                archived.getPurchaserId(),
+                                archived.getRunId(),
+                                archived.getFinancingDate(),
+                                archived.getDaysToFinance(),
+                                archived.getFinancingRateInBps(),
+                                archived.getEarlyPaymentAmountInCents())));
+
+        return financing.or(() -> financingPartitionService.findFinancing(financingId));
+    }
+
+    private int archiveBatch(LocalDate maturedBefore, int batchSize) {
+        var invoiceIds = archivedInvoiceRepository.findMaturedInvoiceIds(maturedBefore, batchSize);
+        if (invoiceIds.isEmpty()) {
+            return 0;
+        }
+
+        archivedInvoiceRepository.archiveFinancing(invoiceIds);
+        archivedInvoiceRepository.deleteFinancing(invoiceIds);
+        archivedInvoiceRepository.archiveInvoices(invoiceIds);
+        archivedInvoiceRepository.deleteInvoices(invoiceIds);
+
+        return invoiceIds.size();
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(financingProperties.getArchive().getThrottlePause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Archival interrupted", e);
+        }
+    }
+}
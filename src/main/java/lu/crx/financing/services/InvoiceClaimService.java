@@ -0,0 +1,54 @@
+package lu.crx.financing.services;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Claims of the invoices to finance, so that overlapping financing runs (e.g. a manual rerun during the scheduled one)
+ * never finance an invoice twice.
+ * <p>
+ * A claim locks the invoices that are still not financed ({@code select ... for update skip locked}) until the run
+ * commits. Invoices financed by a run committed in the meantime don't match anymore, and the ones locked by a run still
+ * in progress are skipped instead of waited for: both are lost races, the run goes on with the other invoices and
+ * doesn't fail. A plain table lock would serialise the runs, optimistic locking would fail the whole chunk on the
+ * first conflict.
+ */
+@Slf4j
+@Service
+@AllArgsConstructor
+public class InvoiceClaimService {
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Has to be called within the transaction persisting the financing of the claimed invoices.
+     *
+     * @return ids of the claimed invoices, the other ones have been financed or claimed by a concurrent run
+     */
+    public Set<Long> claim(Collection<Long> invoiceIds) {
+        if (invoiceIds.isEmpty()) {
+            return Set.of();
+        }
+
+        var claimed = new HashSet<>(jdbcTemplate.queryForList("""
+                select id
+                from invoice
+                where id in (:invoiceIds)
+                    and financing_id is null
+                for update skip locked""", Map.of("invoiceIds", invoiceIds), Long.class));
+
+        if (claimed.size() < invoiceIds.size()) {
+            log.info("{} of {} invoices claimed by a concurrent financing run", invoiceIds.size() - claimed.size(),
+                    invoiceIds.size());
+        }
+
+        return claimed;
+    }
+}
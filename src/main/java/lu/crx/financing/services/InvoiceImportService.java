@@ -0,0 +1,242 @@
+package lu.crx.financing.services;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.dtos.InvoiceImportError;
+import lu.crx.financing.dtos.InvoiceImportResult;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Map;
+
+/**
+ * Bulk import of the invoices of CSV files, e.g. the daily drops of the creditors.
+ * <p>
+ * The file is streamed through a {@link CsvLineReader}, which parses the fields in its read buffer, and the creditors
+ * and debtors are referenced by name, resolved through {@link IdsByName} maps loaded once per import. The valid rows
+ * are held in primitive arrays and inserted by JDBC batches of {@code financing.invoice-import.batch-size} invoices,
+ * each batch in its own transaction, with ids from {@code invoice_seq}.
+ * <p>
+ * Rows failing the validation are rejected and reported with their line number, the import goes on with the next row.
+ * Only a missing or unexpected header aborts it.
+ */
+@Slf4j
+@Service
+@AllArgsConstructor
+public class InvoiceImportService {
+
+    public static final String CSV_HEADER = "creditor,debtor,maturity_date,value_in_cents";
+
+    private static final String[] CSV_COLUMNS = CSV_HEADER.split(",");
+
+    private static final int CREDITOR = 0;
+
+    private static final int DEBTOR = 1;
+
+    private static final int MATURITY_DATE = 2;
+
+    private static final int VALUE_IN_CENTS = 3;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final FinancingProperties financingProperties;
+
+    /**
+     * Valid rows waiting for the next batch insert, debtor id 0 when the invoice has no debtor.
+     */
+    private static class InvoiceBatch implements BatchPreparedStatementSetter {
+
+        private final long[] creditorIds;
+        private final long[] debtorIds;
+        private final long[] maturityDates;
+        private final long[] valuesInCents;
+        private int size;
+
+        private InvoiceBatch(int capacity) {
+            creditorIds = new long[capacity];
+            debtorIds = new long[capacity];
+            maturityDates = new long[capacity];
+            valuesInCents = new long[capacity];
+        }
+
+        private void add(long creditorId, long debtorId, long maturityDate, long valueInCents) {
+            creditorIds[size] = creditorId;
+            debtorIds[size] = debtorId;
+            maturityDates[size] = maturityDate;
+            valuesInCents[size] = valueInCents;
+            size++;
+        }
+
+        private boolean isFull() {
+            return size == creditorIds.length;
+        }
+
+        @Override
+        public void setValues(PreparedStatement ps, int i) throws SQLException {
+            ps.setLong(1, creditorIds[i]);
+            if (debtorIds[i] == 0) {
+                ps.setNull(2, Types.BIGINT);
+            } else {
+                ps.setLong(2, debtorIds[i]);
+            }
+            ps.setObject(3, LocalDate.ofEpochDay(maturityDates[i]));
+            ps.setLong(4, valuesInCents[i]);
+        }
+
+        @Override
+        public int getBatchSize() {
+            return size;
+        }
+    }
+
+    /**
+     * @return imported invoices and rejected rows
+     */
+    public InvoiceImportResult importFile(Path file) {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return importInvoices(channel);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot import invoices from " + file, e);
+        }
+    }
+
+    /**
+     * @param channel CSV file with the {@link #CSV_HEADER} header, not closed by the import
+     * @return imported invoices and rejected rows
+     * @throws IllegalArgumentException when the header is missing or unexpected, before anything is imported
+     */
+    public InvoiceImportResult importInvoices(ReadableByteChannel channel) throws IOException {
+        log.info("Import of invoices started");
+
+        var properties = financingProperties.getInvoiceImport();
+        var startedAt = System.nanoTime();
+        var reader = new CsvLineReader(channel, (int) properties.getBufferSize().toBytes());
+        if (!reader.next() || !isHeader(reader)) {
+            throw new IllegalArgumentException("CSV header " + CSV_HEADER + " expected on the first line");
+        }
+
+        var creditors = idsByName("creditor");
+        var debtors = idsByName("debtor");
+        var batch = new InvoiceBatch(properties.getBatchSize());
+        var errors = new ArrayList<InvoiceImportError>();
+        var imported = 0L;
+        var rejected = 0L;
+
+        while (reader.next()) {
+            var error = addRow(reader, creditors, debtors, batch);
+            if (error != null) {
+                rejected++;
+                if (errors.size() < properties.getMaxReportedErrors()) {
+                    errors.add(new InvoiceImportError(reader.lineNumber(), error));
+                }
+            } else if (batch.isFull()) {
+                imported += insert(batch);
+                log.debug("{} invoices imported", imported);
+            }
+        }
+        imported += insert(batch);
+
+        var elapsedMillis = (System.nanoTime() - startedAt) / 1_000_000;
+        log.info("Import of invoices completed, {} invoices imported and {} rows rejected in {} ms ({} invoices/s)",
+                imported, rejected, elapsedMillis, imported * 1000 / Math.max(1, elapsedMillis));
+
+        return new InvoiceImportResult(imported, rejected, errors);
+    }
+
+    private static boolean isHeader(CsvLineReader reader) {
+        if (reader.fieldCount() != CSV_COLUMNS.length) {
+            return false;
+        }
+        for (var i = 0; i < CSV_COLUMNS.length; i++) {
+            if (!CSV_COLUMNS[i].equals(reader.text(i).strip())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return error of the row, null when it is valid and added to the batch
+     */
+    private static String addRow(CsvLineReader reader, IdsByName creditors, IdsByName debtors, InvoiceBatch batch) {
+        if (reader.malformation() != null) {
+            return reader.malformation();
+        }
+        if (reader.fieldCount() != CSV_COLUMNS.length) {
+            return "Expected " + CSV_COLUMNS.length + " fields, found " + reader.fieldCount();
+        }
+
+        var creditorId = reader.id(CREDITOR, creditors);
+        if (creditorId < 0) {
+            return unresolved("creditor", reader.text(CREDITOR), creditorId);
+        }
+
+        var debtorId = 0L;
+        if (!reader.isEmpty(DEBTOR)) {
+            debtorId = reader.id(DEBTOR, debtors);
+            if (debtorId < 0) {
+                return unresolved("debtor", reader.text(DEBTOR), debtorId);
+            }
+        }
+
+        var maturityDate = reader.parseDate(MATURITY_DATE);
+        if (maturityDate == CsvLineReader.INVALID) {
+            return "Invalid maturity date '" + reader.text(MATURITY_DATE) + "', expected yyyy-MM-dd";
+        }
+
+        var valueInCents = reader.parseLong(VALUE_IN_CENTS);
+        if (valueInCents == CsvLineReader.INVALID || valueInCents <= 0) {
+            return "Invalid value in cents '" + reader.text(VALUE_IN_CENTS) + "', expected a positive whole number";
+        }
+
+        batch.add(creditorId, debtorId, maturityDate, valueInCents);
+        return null;
+    }
+
+    private static String unresolved(String entity, String name, long id) {
+        return id == IdsByName.AMBIGUOUS
+                ? "Ambiguous " + entity + " '" + name + "', more " + entity + "s have that name"
+                : "Unknown " + entity + " '" + name + "'";
+    }
+
+    /**
+     * @return number of inserted invoices, the batch is emptied
+     */
+    private int insert(InvoiceBatch batch) {
+        if (batch.size == 0) {
+            return 0;
+        }
+
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.getJdbcOperations().batchUpdate("""
+                insert into invoice (id, creditor_id, debtor_id, maturity_date, value_in_cents)
+                values (next value for invoice_seq, ?, ?, ?, ?)""", batch));
+
+        var inserted = batch.size;
+        batch.size = 0;
+        return inserted;
+    }
+
+    private IdsByName idsByName(String table) {
+        var names = jdbcTemplate.query("select id, name from " + table, Map.of(),
+                (rs, rowNum) -> Map.entry(rs.getString("name"), rs.getLong("id")));
+        var ids = new IdsByName(names.size());
+        names.forEach(name -> ids.put(name.getKey(), name.getValue()));
+        return ids;
+    }
+}
@@ -0,0 +1,78 @@
+package lu.crx.financing.services;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.dtos.FinancingCandidate;
+import lu.crx.financing.dtos.InvoiceTuple;
+import lu.crx.financing.dtos.PendingInvoiceTuple;
+import lu.crx.financing.repositories.InvoiceRepository;
+import lu.crx.financing.repositories.PurchaserRepository;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Selection of the lowest rate purchaser in memory instead of by the financing query.
+ * <p>
+ * The settings of all purchasers are loaded once per run into a {@link CreditorPurchasers} per creditor and every
+ * unfinanced invoice is matched against the purchasers of its creditor by a {@link PurchaserSelector}, vectorized
+ * when {@code financing.selection.vectorized} is set and the Vector API is available. The invoices are read without
+ * joining the settings, so the database returns a row per invoice instead of a row per invoice and purchaser.
+ */
+@Slf4j
+@Service
+@AllArgsConstructor
+public class PurchaserSelectionEngine {
+
+    private final InvoiceRepository invoiceRepository;
+
+    private final PurchaserRepository purchaserRepository;
+
+    private final FinancingProperties financingProperties;
+
+    /**
+     * @return same invoices, purchasers, financing rates and early payment amounts as
+     * {@link InvoiceRepository#findNotFinancedForLowestRatePurchaser}, ordered by invoice id
+     */
+    public List<InvoiceTuple> findNotFinancedForLowestRatePurchaser() {
+        var selector = PurchaserSelector.create(financingProperties.getSelection().isVectorized());
+        var purchasersByCreditor = CreditorPurchasers.byCreditor(purchaserRepository.findSettingsOrderedByRate());
+        var invoices = invoiceRepository.findNotFinancedForSelection();
+
+        log.info("Selecting the purchasers of {} invoices of {} creditors with the {}", invoices.size(),
+                purchasersByCreditor.size(), selector);
+
+        return select(invoices, purchasersByCreditor, selector);
+    }
+
+    static List<InvoiceTuple> select(List<PendingInvoiceTuple> invoices,
+                                     Map<Long, CreditorPurchasers> purchasersByCreditor, PurchaserSelector selector) {
+        var selected = new ArrayList<InvoiceTuple>(invoices.size());
+        for (var invoice : invoices) {
+            var purchasers = purchasersByCreditor.get(invoice.getCreditorId());
+            if (purchasers == null) {
+                continue;
+            }
+            int daysToFinance = invoice.getDaysToFinance();
+            var index = selector.select(purchasers, daysToFinance, invoice.getMaxFinancingRateInBps());
+            if (index >= 0) {
+                selected.add(candidate(invoice.getInvoiceId(), invoice.getValueInCents(), daysToFinance, purchasers, index));
+            }
+        }
+        return selected;
+    }
+
+    /*
+    Same arithmetic as the financing queries: the rate is calculated in double precision and rounded to a float
+    only when returned, the early payment amount is rounded half up to cents.
+     */
+    static FinancingCandidate candidate(long invoiceId, long valueInCents, int daysToFinance,
+                                        CreditorPurchasers purchasers, int index) {
+        var financingRate = (double) (purchasers.annualRateInBps(index) * daysToFinance) / 360;
+        return new FinancingCandidate(invoiceId, purchasers.purchaserId(index), daysToFinance, (float) financingRate,
+                valueInCents - Math.round(valueInCents * financingRate * 0.0001));
+    }
+}
@@ -0,0 +1,34 @@
+package lu.crx.financing.services;
+
+/**
+ * Selection of the purchaser financing an invoice at the lowest rate among the purchasers of its creditor.
+ * <p>
+ * A purchaser is eligible when the invoice is financed for at least its minimum term and the financing rate,
+ * {@code annualRateInBps * daysToFinance / 360}, doesn't exceed the maximum rate of the creditor. The rate is compared
+ * as {@code annualRateInBps * daysToFinance <= maxFinancingRateInBps * 360} in integers, which is exact and matches
+ * the floating point comparison of the financing queries.
+ */
+public interface PurchaserSelector {
+
+    String VECTOR_MODULE = "jdk.incubator.vector";
+
+    /**
+     * @return index of the first eligible purchaser, i.e. the one with the lowest rate, -1 when none is eligible
+     */
+    int select(CreditorPurchasers purchasers, int daysToFinance, int maxFinancingRateInBps);
+
+    /**
+     * @param vectorized whether to use the Vector API, if the {@value #VECTOR_MODULE} module is available
+     *                   ({@code --add-modules jdk.incubator.vector})
+     */
+    static PurchaserSelector create(boolean vectorized) {
+        return vectorized && isVectorApiAvailable() ? new VectorPurchaserSelector() : new ScalarPurchaserSelector();
+    }
+
+    /**
+     * @return true when the incubating Vector API module has been added to the boot layer
+     */
+    static boolean isVectorApiAvailable() {
+        return ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent();
+    }
+}
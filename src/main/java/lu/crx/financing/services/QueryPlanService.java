@@ -0,0 +1,132 @@
+package lu.crx.financing.services;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.dtos.QueryPlan;
+import lu.crx.financing.repositories.InvoiceRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Diagnostic facility capturing H2 execution plans of the financing queries declared in {@link InvoiceRepository}.
+ * <p>
+ * Plans are logged on demand by enabling the DEBUG level for this class, e.g.
+ * {@code logging.level.lu.crx.financing.services.QueryPlanService=DEBUG}. Note that {@code EXPLAIN ANALYZE} executes
+ * the queries, so logging the plans doubles the query time of a financing run.
+ */
+@Slf4j
+@Service
+@AllArgsConstructor
+public class QueryPlanService {
+
+    private static final String BASELINE_EXTENSION = ".plan";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Runs {@code EXPLAIN ANALYZE} for every native select query declared in {@link InvoiceRepository}.
+     *
+     * @param parameters values bound to the named parameters of the queries
+     */
+    public List<QueryPlan> explainFinancingQueries(Map<String, ?> parameters) {
+        return Arrays.stream(InvoiceRepository.class.getMethods())
+                .filter(method -> method.isAnnotationPresent(Query.class) && !method.isAnnotationPresent(Modifying.class))
+                .filter(method -> method.getAnnotation(Query.class).nativeQuery())
+                .sorted(Comparator.comparing(Method::getName))
+                .map(method -> explain(method.getName(), method.getAnnotation(Query.class).value(), parameters))
+                .toList();
+    }
+
+    public QueryPlan explain(String queryName, String sql, Map<String, ?> parameters) {
+        var plan = jdbcTemplate.queryForObject("explain analyze " + sql, parameters, String.class);
+        return QueryPlan.parse(queryName, plan);
+    }
+
+    /**
+     * Logs the plans of all financing queries when DEBUG is enabled for this class, does nothing otherwise.
+     */
+    public void logFinancingQueryPlans(Map<String, ?> parameters) {
+        if (!log.isDebugEnabled()) {
+            return;
+        }
+        explainFinancingQueries(parameters).forEach(plan ->
+                log.debug("Plan of {}:\n{}\nTable accesses:\n{}", plan.queryName(), plan.plan(), plan.toBaseline()));
+    }
+
+    /**
+     * Compares the plan with its baseline and describes every regression found: full table scans replacing
+     * index lookups, lost or changed index usage and scan counts growing over the given factor.
+     *
+     * @return descriptions of the regressions, empty when the plan is as good as the baseline
+     */
+    public List<String> findRegressions(QueryPlan baseline, QueryPlan plan, double scanCountFactor) {
+        var regressions = new ArrayList<String>();
+
+        if (baseline.tableAccesses().size() != plan.tableAccesses().size()) {
+            regressions.add("%s: number of table accesses changed from %d to %d"
+                    .formatted(plan.queryName(), baseline.tableAccesses().size(), plan.tableAccesses().size()));
+            return regressions;
+        }
+
+        for (var i = 0; i < plan.tableAccesses().size(); i++) {
+            var expected = baseline.tableAccesses().get(i);
+            var actual = plan.tableAccesses().get(i);
+
+            if (!expected.table().equals(actual.table())) {
+                regressions.add("%s: access #%d reads %s instead of %s".formatted(plan.queryName(), i, actual.table(), expected.table()));
+            } else if (actual.isTableScan() && !expected.isTableScan()) {
+                regressions.add("%s: full scan of %s instead of index %s".formatted(plan.queryName(), actual.table(), expected.access()));
+            } else if (!String.valueOf(expected.access()).equals(String.valueOf(actual.access()))) {
+                regressions.add("%s: %s accessed through %s instead of %s"
+                        .formatted(plan.queryName(), actual.table(), actual.access(), expected.access()));
+            }
+            if (expected.scanCount() >= 0 && actual.scanCount() > Math.max(1, expected.scanCount()) * scanCountFactor) {
+                regressions.add("%s: scan count of %s grew from %d to %d"
+                        .formatted(plan.queryName(), actual.table(), expected.scanCount(), actual.scanCount()));
+            }
+        }
+
+        return regressions;
+    }
+
+    public Optional<QueryPlan> readBaseline(Path directory, String queryName) {
+        var file = directory.resolve(queryName + BASELINE_EXTENSION);
+        if (Files.notExists(file)) {
+            return Optional.empty();
+        }
+        try {
+            var tableAccesses = Files.readAllLines(file).stream()
+                    .filter(line -> !line.isBlank())
+                    .map(QueryPlan.TableAccess::parse)
+                    .toList();
+            return Optional.of(new QueryPlan(queryName, null, tableAccesses));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read plan baseline " + file, e);
+        }
+    }
+
+    public void writeBaseline(Path directory, QueryPlan plan) {
+        var file = directory.resolve(plan.queryName() + BASELINE_EXTENSION);
+        try {
+            Files.createDirectories(directory);
+            Files.writeString(file, plan.toBaseline());
+            log.info("Plan baseline of {} written to {}", plan.queryName(), file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write plan baseline " + file, e);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package lu.crx.financing.services;
+
+/**
+ * Plain loop over the purchasers, used when the Vector API is not available or disabled.
+ */
+public class ScalarPurchaserSelector implements PurchaserSelector {
+
+    @Override
+    public int select(CreditorPurchasers purchasers, int daysToFinance, int maxFinancingRateInBps) {
+        var annualRates = purchasers.annualRatesInBps();
+        var minimumTerms = purchasers.minimumTermsInDays();
+        var maxRateTimes360 = maxFinancingRateInBps * 360;
+
+        for (var i = 0; i < annualRates.length; i++) {
+            if (daysToFinance >= minimumTerms[i] && annualRates[i] * daysToFinance <= maxRateTimes360) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return "scalar purchaser selector";
+    }
+}
@@ -246,15 +246,22 @@ public class SeedingService {
             drop sequence CREDITOR_SEQ;
             drop sequence DEBTOR_SEQ;
             drop sequence FINANCING_SEQ;
+            drop sequence FINANCING_RUN_SEQ;
+            drop sequence FINANCING_PARTITION_SEQ;
             drop sequence INVOICE_SEQ;
             drop sequence PURCHASER_FINANCING_SETTINGS_SEQ;
             drop sequence PURCHASER_SEQ;
+            drop table PURCHASER_DAILY_FINANCING;
+            drop table CREDITOR_DAILY_FINANCING;
             drop table INVOICE;
+            drop table INVOICE_ARCHIVE;
+            drop table FINANCING_ARCHIVE;
             drop table DEBTOR;
             drop table FINANCING;
-            drop table PURCHASER_PURCHASER_FINANCING_SETTINGS;
-            drop table PURCHASER;
+            drop table FINANCING_RUN;
+            drop table FINANCING_PARTITION;
             drop table PURCHASER_FINANCING_SETTINGS;
+            drop table PURCHASER;
             drop table CREDITOR;""";
 
         entityManager.createNativeQuery(sql).executeUpdate();
@@ -0,0 +1,202 @@
+package lu.crx.financing.services;
+
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.dtos.FinancingCandidate;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Buffer of financing candidates with a fixed heap budget.
+ * <p>
+ * Whenever the candidates held exceed the budget, they are sorted by invoice id and spilled to a temporary file
+ * as a sorted run. Reading the buffer back merges the runs, so the candidates are returned ordered by invoice id
+ * while at most one candidate per run is held in memory. The runs are deleted when the buffer is closed.
+ */
+@Slf4j
+public class SpillingCandidateBuffer implements AutoCloseable {
+
+    private static final Comparator<FinancingCandidate> BY_INVOICE_ID = Comparator.comparingLong(FinancingCandidate::invoiceId);
+
+    private static final int IO_BUFFER_SIZE = 64 * 1024;
+
+    private final int capacity;
+
+    private final List<FinancingCandidate> candidates = new ArrayList<>();
+
+    private final List<Run> runs = new ArrayList<>();
+
+    private final List<DataInputStream> openRuns = new ArrayList<>();
+
+    private long size;
+
+    /**
+     * @param heapBudgetInBytes heap the buffered candidates may take, see {@link FinancingCandidate#ESTIMATED_SIZE_IN_BYTES}
+     */
+    public SpillingCandidateBuffer(long heapBudgetInBytes) {
+        this.capacity = Math.clamp(heapBudgetInBytes / FinancingCandidate.ESTIMATED_SIZE_IN_BYTES, 1, Integer.MAX_VALUE - 8);
+    }
+
+    private record Run(Path file, long size) {
+    }
+
+    public void add(FinancingCandidate candidate) {
+        candidates.add(candidate);
+        size++;
+        if (candidates.size() >= capacity) {
+            spill();
+        }
+    }
+
+    /**
+     * @return number of candidates added to the buffer
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return number of sorted runs spilled to disk so far
+     */
+    public int spilledRuns() {
+        return runs.size();
+    }
+
+    /**
+     * @return all added candidates ordered by invoice id, valid until the buffer is closed
+     */
+    public Iterator<FinancingCandidate> iterator() {
+        if (runs.isEmpty()) {
+            candidates.sort(BY_INVOICE_ID);
+            return candidates.iterator();
+        }
+        if (!candidates.isEmpty()) {
+            spill();
+        }
+        return new MergingIterator();
+    }
+
+    @Override
+    public void close() {
+        for (var in : openRuns) {
+            try {
+                in.close();
+            } catch (IOException e) {
+                log.warn("Cannot close run of financing candidates", e);
+            }
+        }
+        openRuns.clear();
+        for (var run : runs) {
+            try {
+                Files.deleteIfExists(run.file());
+            } catch (IOException e) {
+                log.warn("Cannot delete run of financing candidates {}", run.file(), e);
+            }
+        }
+        runs.clear();
+        candidates.clear();
+    }
+
+    private void spill() {
+        candidates.sort(BY_INVOICE_ID);
+        try {
+            var file = Files.createTempFile("financing-candidates-", ".run");
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), IO_BUFFER_SIZE))) {
+                for (var candidate : candidates) {
+                    out.writeLong(candidate.invoiceId());
+                    out.writeLong(candidate.purchaserId());
+                    out.writeInt(candidate.daysToFinance());
+                    out.writeFloat(candidate.financingRate());
+                    out.writeLong(candidate.earlyPaymentAmount());
+                }
+            }
+            runs.add(new Run(file, candidates.size()));
+            log.debug("{} financing candidates spilled to {}", candidates.size(), file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot spill financing candidates", e);
+        }
+        candidates.clear();
+    }
+
+    /**
+     * Cursor over a single sorted run.
+     */
+    private static class RunCursor {
+        private final DataInputStream in;
+        private long remaining;
+        private FinancingCandidate head;
+
+        private RunCursor(DataInputStream in, long size) {
+            this.in = in;
+            this.remaining = size;
+        }
+
+        private boolean advance() throws IOException {
+            if (remaining == 0) {
+                head = null;
+                return false;
+            }
+            remaining--;
+            head = new FinancingCandidate(in.readLong(), in.readLong(), in.readInt(), in.readFloat(), in.readLong());
+            return true;
+        }
+    }
+
+    /**
+     * K-way merge of the sorted runs.
+     */
+    private class MergingIterator implements Iterator<FinancingCandidate> {
+
+        private final PriorityQueue<RunCursor> cursors =
+                new PriorityQueue<>(Comparator.comparing(cursor -> cursor.head, BY_INVOICE_ID));
+
+        private MergingIterator() {
+            try {
+                for (var run : runs) {
+                    var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run.file()), IO_BUFFER_SIZE));
+                    openRuns.add(in);
+                    var cursor = new RunCursor(in, run.size());
+                    if (cursor.advance()) {
+                        cursors.add(cursor);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read spilled financing candidates", e);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !cursors.isEmpty();
+        }
+
+        @Override
+        public FinancingCandidate next() {
+            var cursor = cursors.poll();
+            if (cursor == null) {
+                throw new NoSuchElementException();
+            }
+            var candidate = cursor.head;
+            try {
+                if (cursor.advance()) {
+                    cursors.add(cursor);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read spilled financing candidates", e);
+            }
+            return candidate;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package lu.crx.financing.services;
+
+import lu.crx.financing.dtos.FinancingCandidate;
+import lu.crx.financing.dtos.InvoiceTuple;
+
+import java.util.function.Consumer;
+
+/**
+ * Streaming reduction of the financing candidates to a single purchaser per invoice.
+ * <p>
+ * The candidates have to be ordered by invoice id, so only the best candidate of the current invoice is held and it is
+ * passed downstream as soon as the next invoice starts. The best candidate is the one with the highest early payment
+ * amount, on a tie the first one, i.e. the purchaser with the lowest id when the candidates are ordered by purchaser too.
+ */
+public class TopOneReducer implements Consumer<InvoiceTuple> {
+
+    private final Consumer<FinancingCandidate> downstream;
+
+    private FinancingCandidate best;
+
+    private long accepted;
+
+    public TopOneReducer(Consumer<FinancingCandidate> downstream) {
+        this.downstream = downstream;
+    }
+
+    /*
+    The tuple is compared on its invoice id and early payment amount and converted to a candidate only when it becomes
+    the best one of its invoice. The projections streamed by the repository hold boxed values already, unboxing them
+    doesn't allocate; the candidates of the pipelined mode are compared on their primitive fields, since their getters
+    would box. See SelectionAllocationTest.
+     */
+    @Override
+    public void accept(InvoiceTuple tuple) {
+        accepted++;
+        long invoiceId;
+        long earlyPaymentAmount;
+        if (tuple instanceof FinancingCandidate candidate) {
+            invoiceId = candidate.invoiceId();
+            earlyPaymentAmount = candidate.earlyPaymentAmount();
+        } else {
+            invoiceId = tuple.getInvoiceId();
+            earlyPaymentAmount = tuple.getEarlyPaymentAmount();
+        }
+
+        if (best == null) {
+            best = FinancingCandidate.of(tuple);
+            return;
+        }
+
+        if (invoiceId < best.invoiceId()) {
+            throw new IllegalStateException("Candidates are not ordered by invoice id, " + invoiceId
+                    + " received after " + best.invoiceId());
+        }
+        if (invoiceId > best.invoiceId()) {
+            downstream.accept(best);
+            best = FinancingCandidate.of(tuple);
+        } else if (earlyPaymentAmount > best.earlyPaymentAmount()) {
+            best = FinancingCandidate.of(tuple);
+        }
+    }
+
+    /**
+     * @return number of candidates received
+     */
+    public long getAccepted() {
+        return accepted;
+    }
+
+    /**
+     * Passes the best candidate of the last invoice downstream, to be called once the input is exhausted.
+     */
+    public void finish() {
+        if (best != null) {
+            downstream.accept(best);
+            best = null;
+        }
+    }
+}
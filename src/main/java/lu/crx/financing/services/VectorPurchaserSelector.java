@@ -0,0 +1,51 @@
+package lu.crx.financing.services;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Evaluates the purchasers in data-parallel lanes with the Vector API: every iteration compares the minimum terms
+ * and the rates of {@code SPECIES.length()} purchasers at once (8 with AVX2, 16 with AVX-512) and stops at the first
+ * lane holding an eligible purchaser, the last purchasers are evaluated with a masked load.
+ * <p>
+ * The class must only be loaded when the {@value PurchaserSelector#VECTOR_MODULE} module is available,
+ * see {@link PurchaserSelector#create}.
+ */
+public class VectorPurchaserSelector implements PurchaserSelector {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    @Override
+    public int select(CreditorPurchasers purchasers, int daysToFinance, int maxFinancingRateInBps) {
+        var annualRates = purchasers.annualRatesInBps();
+        var minimumTerms = purchasers.minimumTermsInDays();
+        var maxRateTimes360 = maxFinancingRateInBps * 360;
+
+        var i = 0;
+        for (var bound = SPECIES.loopBound(annualRates.length); i < bound; i += SPECIES.length()) {
+            var eligible = IntVector.fromArray(SPECIES, minimumTerms, i).compare(VectorOperators.LE, daysToFinance)
+                    .and(IntVector.fromArray(SPECIES, annualRates, i).mul(daysToFinance)
+                            .compare(VectorOperators.LE, maxRateTimes360));
+            if (eligible.anyTrue()) {
+                return i + eligible.firstTrue();
+            }
+        }
+        if (i < annualRates.length) {
+            var remaining = SPECIES.indexInRange(i, annualRates.length);
+            var eligible = IntVector.fromArray(SPECIES, minimumTerms, i, remaining)
+                    .compare(VectorOperators.LE, daysToFinance, remaining)
+                    .and(IntVector.fromArray(SPECIES, annualRates, i, remaining).mul(daysToFinance)
+                            .compare(VectorOperators.LE, maxRateTimes360, remaining));
+            if (eligible.anyTrue()) {
+                return i + eligible.firstTrue();
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return "vector purchaser selector (" + SPECIES.length() + " lanes)";
+    }
+}
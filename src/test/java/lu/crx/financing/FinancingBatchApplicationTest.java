@@ -0,0 +1,39 @@
+package lu.crx.financing;
+
+import lu.crx.financing.repositories.FinancingRunRepository;
+import lu.crx.financing.services.SeedingService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(args = "QUERY_FOR_ALL")
+@ActiveProfiles({"test", "batch"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_CLASS)
+public class FinancingBatchApplicationTest {
+
+    @Autowired
+    private SeedingService seedingService;
+
+    @Autowired
+    private FinancingRunRepository financingRunRepository;
+
+    @AfterEach
+    public void empty() {
+        seedingService.emptyDatabase();
+    }
+
+    @Test
+    void shouldRunFinancingWithoutSeeding() {
+        var runs = financingRunRepository.findAll();
+
+        assertThat(runs).hasSize(1);
+        assertThat(runs.getFirst().getMode()).isEqualTo("QUERY_FOR_ALL");
+        assertThat(runs.getFirst().getFinancedInvoices()).isZero();
+        assertThat(runs.getFirst().getCompletedAt()).isNotNull();
+    }
+}
@@ -0,0 +1,249 @@
+package lu.crx.financing.fixtures;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Snapshot of the seeded data of the test database, taken once per JVM and restored before every test, so that
+ * the tests of a class share a single context and seeding instead of a fresh context, schema and seeding per test.
+ * <p>
+ * The snapshot copies the tables of the {@code PUBLIC} schema, with their primary keys, to a schema of its own
+ * ({@code SNAPSHOT_<name>}) of the same database: the rows never leave the database and nothing is parsed as with
+ * {@code SCRIPT}/{@code RUNSCRIPT}, the schema and its indexes are left alone. Only the tables modified since the last
+ * restore by the same instance are restored, according to {@code information_schema.tables.last_modification}, and
+ * only their rows which differ from the snapshot are written, deleted or inserted by a {@code delete} and
+ * a {@code merge} joining the snapshot on the primary key. Restoring a large dataset so costs a scan of the tables
+ * a test wrote to, not the reinsertion of all their rows and index entries. Keep the instance across the tests,
+ * e.g. with {@code @TestInstance(PER_CLASS)}.
+ * <p>
+ * Tables created after the snapshot, e.g. the monthly financing partitions, are dropped. The sequences are moved
+ * forward to their values at the snapshot, never back, since Hibernate keeps pools of ids allocated from them.
+ * <p>
+ * The tests of other classes drop the schema after every test ({@code SeedingService.emptyDatabase}) and expect
+ * an empty database, a class using a snapshot runs against a database of its own instead, e.g. with
+ * {@code spring.datasource.url=jdbc:h2:mem:<name>;DB_CLOSE_DELAY=-1} and {@code spring.jpa.hibernate.ddl-auto=create},
+ * its context is then cached and shared by all its tests. The snapshot is taken and restored on a connection of its
+ * own, so it is committed even when called within the transaction of a {@code @Transactional} test.
+ */
+@Slf4j
+public class DatabaseSnapshot {
+
+    /**
+     * Sequence values of the snapshots taken by this JVM, by database and snapshot schema.
+     */
+    private static final Map<String, Map<String, Long>> SEQUENCES = new ConcurrentHashMap<>();
+
+    private final DataSource dataSource;
+
+    private final String schema;
+
+    private final String key;
+
+    private final Map<String, Long> restoredModifications = new HashMap<>();
+
+    public DatabaseSnapshot(DataSource dataSource, String name) {
+        this.dataSource = dataSource;
+        this.schema = "SNAPSHOT_" + name.toUpperCase().replaceAll("\\W", "_");
+        this.key = withConnection(jdbcTemplate -> jdbcTemplate.getDataSource().getConnection().getMetaData().getURL())
+                + "/" + schema;
+    }
+
+    /**
+     * Restores the snapshot, seeding the database and taking the snapshot first when this JVM hasn't taken it yet.
+     * A snapshot left in the database by a previous JVM is not reused, the seeding may depend on the current date.
+     * <p>
+     * Call it outside of the transaction of a test, e.g. in {@code @BeforeAll}: the snapshot is taken on a connection
+     * of its own and wouldn't see data seeded but not committed yet.
+     *
+     * @param seed seeds the dataset into the empty database
+     */
+    public void restore(Runnable seed) {
+        if (SEQUENCES.containsKey(key)) {
+            restore();
+        } else {
+            seed.run();
+            take();
+        }
+    }
+
+    /**
+     * Copies the tables and the sequence values of the database, replacing a previous snapshot of the same name.
+     */
+    public void take() {
+        withConnection(jdbcTemplate -> {
+            var startedAt = System.nanoTime();
+
+            jdbcTemplate.execute("drop schema if exists " + schema + " cascade");
+            jdbcTemplate.execute("create schema " + schema);
+            var tables = tableModifications(jdbcTemplate, "PUBLIC").keySet();
+            for (var table : tables) {
+                jdbcTemplate.execute("create table " + schema + "." + table + " as select * from public." + table);
+                var primaryKey = primaryKey(jdbcTemplate, "PUBLIC", table);
+                if (!primaryKey.isEmpty()) {
+                    for (var column : primaryKey) {
+                        jdbcTemplate.execute("alter table " + schema + "." + table + " alter column " + column
+                                + " set not null");
+                    }
+                    jdbcTemplate.execute("alter table " + schema + "." + table + " add primary key ("
+                            + String.join(", ", primaryKey) + ")");
+                }
+            }
+            SEQUENCES.put(key, sequenceValues(jdbcTemplate));
+            restoredModifications.clear();
+            restoredModifications.putAll(tableModifications(jdbcTemplate, "PUBLIC"));
+
+            log.info("Snapshot {} of {} tables taken in {} ms", schema, tables.size(),
+                    (System.nanoTime() - startedAt) / 1_000_000);
+            return null;
+        });
+    }
+
+    /**
+     * Restores the tables modified since the snapshot or the last restore and drops the tables created since.
+     *
+     * @throws IllegalStateException when the snapshot hasn't been taken by this JVM or a table of the snapshot
+     *                               has been dropped since
+     */
+    public void restore() {
+        var sequences = SEQUENCES.get(key);
+        if (sequences == null) {
+            throw new IllegalStateException("Snapshot " + schema + " not taken yet");
+        }
+
+        withConnection(jdbcTemplate -> {
+            var startedAt = System.nanoTime();
+            var tables = tableModifications(jdbcTemplate, "PUBLIC");
+            var snapshotTables = tableModifications(jdbcTemplate, schema).keySet();
+            var missing = snapshotTables.stream().filter(table -> !tables.containsKey(table)).toList();
+            if (!missing.isEmpty()) {
+                throw new IllegalStateException("Tables " + missing + " of snapshot " + schema + " dropped since");
+            }
+
+            var restored = 0;
+            jdbcTemplate.execute("set referential_integrity false");
+            try {
+                for (var table : tables.entrySet()) {
+                    if (!snapshotTables.contains(table.getKey())) {
+                        jdbcTemplate.execute("drop table public." + table.getKey());
+                    } else if (!table.getValue().equals(restoredModifications.get(table.getKey()))) {
+                        restoreTable(jdbcTemplate, table.getKey());
+                        restored++;
+                    }
+                }
+            } finally {
+                jdbcTemplate.execute("set referential_integrity true");
+            }
+
+            var current = sequenceValues(jdbcTemplate);
+            sequences.forEach((sequence, value) -> {
+                if (current.getOrDefault(sequence, Long.MAX_VALUE) < value) {
+                    jdbcTemplate.execute("alter sequence public." + sequence + " restart with " + value);
+                }
+            });
+            restoredModifications.clear();
+            restoredModifications.putAll(tableModifications(jdbcTemplate, "PUBLIC"));
+
+            log.debug("Snapshot {} restored in {} ms, {} of {} tables modified", schema,
+                    (System.nanoTime() - startedAt) / 1_000_000, restored, snapshotTables.size());
+            return null;
+        });
+    }
+
+    /*
+    Tables without a primary key are emptied and copied over.
+     */
+    private void restoreTable(JdbcTemplate jdbcTemplate, String table) {
+        var columns = jdbcTemplate.queryForList("""
+                select column_name
+                from information_schema.columns
+                where table_schema = ?
+                    and table_name = ?
+                order by ordinal_position""", String.class, schema, table);
+        var primaryKey = primaryKey(jdbcTemplate, schema, table);
+        var target = "public." + table;
+        var source = schema + "." + table;
+
+        if (primaryKey.isEmpty()) {
+            jdbcTemplate.execute("truncate table " + target);
+            jdbcTemplate.execute("insert into " + target + " (" + String.join(", ", columns) + ") select "
+                    + String.join(", ", columns) + " from " + source);
+            return;
+        }
+
+        var join = primaryKey.stream().map(column -> "t." + column + " = s." + column)
+                .collect(Collectors.joining(" and "));
+        jdbcTemplate.execute("delete from " + target + " t where not exists (select 1 from " + source + " s where "
+                + join + ")");
+
+        var values = columns.stream().filter(column -> !primaryKey.contains(column)).toList();
+        var merge = new StringBuilder("merge into " + target + " t using " + source + " s on (" + join + ")");
+        if (!values.isEmpty()) {
+            merge.append(" when matched and (")
+                    .append(values.stream().map(column -> "t." + column).collect(Collectors.joining(", ")))
+                    .append(") is distinct from (")
+                    .append(values.stream().map(column -> "s." + column).collect(Collectors.joining(", ")))
+                    .append(") then update set ")
+                    .append(values.stream().map(column -> column + " = s." + column).collect(Collectors.joining(", ")));
+        }
+        merge.append(" when not matched then insert (").append(String.join(", ", columns)).append(") values (")
+                .append(columns.stream().map(column -> "s." + column).collect(Collectors.joining(", "))).append(")");
+        jdbcTemplate.execute(merge.toString());
+    }
+
+    private static List<String> primaryKey(JdbcTemplate jdbcTemplate, String tableSchema, String table) {
+        return jdbcTemplate.queryForList("""
+                select k.column_name
+                from information_schema.table_constraints c
+                join information_schema.key_column_usage k
+                    on c.constraint_schema = k.constraint_schema
+                    and c.constraint_name = k.constraint_name
+                where c.table_schema = ?
+                    and c.table_name = ?
+                    and c.constraint_type = 'PRIMARY KEY'
+                order by k.ordinal_position""", String.class, tableSchema, table);
+    }
+
+    private static Map<String, Long> tableModifications(JdbcTemplate jdbcTemplate, String tableSchema) {
+        return jdbcTemplate.query("""
+                        select table_name, last_modification
+                        from information_schema.tables
+                        where table_schema = ?
+                            and table_type = 'BASE TABLE'""",
+                (rs, rowNum) -> Map.entry(rs.getString(1), rs.getLong(2)), tableSchema).stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+    }
+
+    private static Map<String, Long> sequenceValues(JdbcTemplate jdbcTemplate) {
+        return jdbcTemplate.query("""
+                        select sequence_name, base_value
+                        from information_schema.sequences
+                        where sequence_schema = 'PUBLIC'""",
+                (rs, rowNum) -> Map.entry(rs.getString(1), rs.getLong(2))).stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+    }
+
+    /*
+    A connection of its own in auto-commit mode, not the one bound to the transaction of the test.
+     */
+    private <T> T withConnection(SqlFunction<T> work) {
+        try (var connection = dataSource.getConnection()) {
+            return work.apply(new JdbcTemplate(new SingleConnectionDataSource(connection, true)));
+        } catch (SQLException e) {
+            throw new IllegalStateException("Cannot use snapshot " + schema, e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface SqlFunction<T> {
+        T apply(JdbcTemplate jdbcTemplate) throws SQLException;
+    }
+}
@@ -0,0 +1,88 @@
+package lu.crx.financing.fixtures;
+
+import lu.crx.financing.services.SeedingService;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.sql.DataSource;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:database-snapshot-test;DB_CLOSE_DELAY=-1",
+        "spring.jpa.hibernate.ddl-auto=create"
+})
+@ActiveProfiles("test")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class DatabaseSnapshotTest {
+
+    @Autowired
+    private SeedingService seedingService;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final AtomicInteger seedings = new AtomicInteger();
+
+    private DatabaseSnapshot snapshot;
+
+    @BeforeAll
+    public void seed() {
+        snapshot = new DatabaseSnapshot(dataSource, "seeded");
+        snapshot.restore(this::seedOnce);
+    }
+
+    @Test
+    void shouldRestoreModifiedTablesAndDropCreatedOnes() {
+        jdbcTemplate.update("delete from invoice where id > 5");
+        jdbcTemplate.update("update creditor set max_financing_rate_in_bps = 0");
+        jdbcTemplate.execute("create table financing_2000_01 (id bigint primary key)");
+
+        snapshot.restore(this::seedOnce);
+
+        assertThat(seedings).hasValue(1);
+        assertThat(jdbcTemplate.queryForObject("select count(*) from invoice", Integer.class)).isEqualTo(15);
+        assertThat(jdbcTemplate.queryForObject("select min(max_financing_rate_in_bps) from creditor", Integer.class))
+                .isPositive();
+        assertThat(jdbcTemplate.queryForObject(
+                "select count(*) from information_schema.tables where table_name = 'FINANCING_2000_01'", Integer.class))
+                .isZero();
+    }
+
+    @Test
+    void shouldNotMoveSequencesBack() {
+        var next = jdbcTemplate.queryForObject("select next value for invoice_seq", Long.class);
+
+        snapshot.restore(this::seedOnce);
+
+        assertThat(jdbcTemplate.queryForObject("select next value for invoice_seq", Long.class)).isGreaterThan(next);
+    }
+
+    @Test
+    void shouldFailWhenSnapshotTableDropped() {
+        var other = new DatabaseSnapshot(dataSource, "dropped");
+        jdbcTemplate.execute("create table temporary_table (id bigint primary key)");
+        other.take();
+        jdbcTemplate.execute("drop table temporary_table");
+
+        assertThatThrownBy(other::restore)
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("TEMPORARY_TABLE");
+    }
+
+    private void seedOnce() {
+        seedings.incrementAndGet();
+        seedingService.seedMasterData();
+        seedingService.seedInvoices();
+    }
+}
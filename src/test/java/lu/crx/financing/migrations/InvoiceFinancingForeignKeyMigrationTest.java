@@ -0,0 +1,84 @@
+package lu.crx.financing.migrations;
+
+import lu.crx.financing.services.FinancingService;
+import lu.crx.financing.services.SeedingService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import static lu.crx.financing.services.FinancingService.QueryMode.QUERY_FOR_LOWEST_RATE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+public class InvoiceFinancingForeignKeyMigrationTest {
+
+    @Autowired
+    private SeedingService seedingService;
+
+    @Autowired
+    private FinancingService financingService;
+
+    @Autowired
+    private InvoiceFinancingForeignKeyMigration migration;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void init() {
+        seedingService.seedMasterData();
+        seedingService.seedInvoices();
+        financingService.finance(QUERY_FOR_LOWEST_RATE);
+    }
+
+    @AfterEach
+    public void empty() {
+        seedingService.emptyDatabase();
+    }
+
+    @Test
+    void shouldDropForeignKeyOfInvoiceFinancing() {
+        // constraint as created by the schema update of the former mapping, with a name generated by Hibernate
+        jdbcTemplate.execute("alter table invoice add constraint FKBJ5MPC8Y9P3WAEB3SR0FD2V6W foreign key (financing_id) references financing");
+
+        migration.migrate();
+
+        assertThat(financingForeignKeys()).isZero();
+        // the financing of a rolled over month is deleted while its invoices keep referencing it
+        jdbcTemplate.update("delete from financing where id = (select financing_id from invoice where id = 1)");
+        assertThat(jdbcTemplate.queryForObject("select financing_id from invoice where id = 1", Long.class)).isNotNull();
+    }
+
+    @Test
+    void shouldKeepOtherForeignKeysOfInvoice() {
+        var foreignKeys = invoiceForeignKeys();
+
+        migration.migrate();
+
+        assertThat(financingForeignKeys()).isZero();
+        assertThat(invoiceForeignKeys()).isEqualTo(foreignKeys).isPositive();
+    }
+
+    private int financingForeignKeys() {
+        return jdbcTemplate.queryForObject("""
+                select count(*)
+                from information_schema.table_constraints tc
+                join information_schema.key_column_usage kcu on kcu.constraint_name = tc.constraint_name
+                where tc.table_name = 'INVOICE' and tc.constraint_type = 'FOREIGN KEY' and kcu.column_name = 'FINANCING_ID'""",
+                Integer.class);
+    }
+
+    private int invoiceForeignKeys() {
+        return jdbcTemplate.queryForObject("""
+                select count(*)
+                from information_schema.table_constraints
+                where table_name = 'INVOICE' and constraint_type = 'FOREIGN KEY'""", Integer.class);
+    }
+}
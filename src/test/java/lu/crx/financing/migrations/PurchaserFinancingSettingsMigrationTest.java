@@ -0,0 +1,84 @@
+package lu.crx.financing.migrations;
+
+import lu.crx.financing.services.SeedingService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+public class PurchaserFinancingSettingsMigrationTest {
+
+    @Autowired
+    private SeedingService seedingService;
+
+    @Autowired
+    private PurchaserFinancingSettingsMigration migration;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void init() {
+        seedingService.seedMasterData();
+    }
+
+    @AfterEach
+    public void empty() {
+        seedingService.emptyDatabase();
+    }
+
+    @Test
+    void shouldMovePurchasersFromJoinTable() {
+        var purchasersBySettings = jdbcTemplate.queryForList("select id, purchaser_id from purchaser_financing_settings");
+        createLegacyJoinTable();
+
+        migration.migrate();
+
+        assertThat(jdbcTemplate.queryForList("select id, purchaser_id from purchaser_financing_settings"))
+                .containsExactlyInAnyOrderElementsOf(purchasersBySettings);
+        assertThat(jdbcTemplate.queryForObject("""
+                select count(*) from information_schema.tables where table_name = ?""",
+                Integer.class, PurchaserFinancingSettingsMigration.JOIN_TABLE)).isZero();
+        assertThat(jdbcTemplate.queryForObject("""
+                select is_nullable from information_schema.columns
+                where table_name = 'PURCHASER_FINANCING_SETTINGS' and column_name = 'PURCHASER_ID'""", String.class))
+                .isEqualTo("NO");
+    }
+
+    @Test
+    void shouldDoNothingWithoutJoinTable() {
+        var purchasersBySettings = jdbcTemplate.queryForList("select id, purchaser_id from purchaser_financing_settings");
+
+        migration.migrate();
+
+        assertThat(jdbcTemplate.queryForList("select id, purchaser_id from purchaser_financing_settings"))
+                .containsExactlyInAnyOrderElementsOf(purchasersBySettings);
+        assertThat(jdbcTemplate.queryForObject("""
+                select count(*) from purchaser_financing_settings where purchaser_id is null""", Integer.class)).isZero();
+    }
+
+    /*
+    Schema and data as created by the former unidirectional Purchaser.purchaserFinancingSettings mapping.
+     */
+    private void createLegacyJoinTable() {
+        jdbcTemplate.execute("""
+                create table purchaser_purchaser_financing_settings
+                    (purchaser_id bigint not null references purchaser,
+                     purchaser_financing_settings_id bigint not null unique references purchaser_financing_settings,
+                     primary key (purchaser_id, purchaser_financing_settings_id))""");
+        jdbcTemplate.update("""
+                insert into purchaser_purchaser_financing_settings (purchaser_id, purchaser_financing_settings_id)
+                select purchaser_id, id from purchaser_financing_settings""");
+        jdbcTemplate.execute("alter table purchaser_financing_settings alter column purchaser_id set null");
+        jdbcTemplate.update("update purchaser_financing_settings set purchaser_id = null");
+    }
+}
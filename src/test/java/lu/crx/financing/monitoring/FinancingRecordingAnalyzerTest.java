@@ -0,0 +1,76 @@
+package lu.crx.financing.monitoring;
+
+import jdk.jfr.Recording;
+import lu.crx.financing.services.FinancingService;
+import lu.crx.financing.services.SeedingService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@TestPropertySource(properties = "financing.chunk-size=3")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+public class FinancingRecordingAnalyzerTest {
+
+    private static final List<String> EVENTS = List.of(FinancingRunEvent.NAME, FinancingQueryEvent.NAME, FinancingChunkEvent.NAME);
+
+    @Autowired
+    private SeedingService seedingService;
+
+    @Autowired
+    private FinancingService financingService;
+
+    @TempDir
+    private Path tempDir;
+
+    @BeforeEach
+    public void init() {
+        seedingService.seedMasterData();
+        seedingService.seedInvoices();
+    }
+
+    @AfterEach
+    public void empty() {
+        seedingService.emptyDatabase();
+    }
+
+    @ParameterizedTest
+    @EnumSource(FinancingService.QueryMode.class)
+    void shouldSummariseFinancingPhasesOfRecording(FinancingService.QueryMode mode) throws Exception {
+        var file = tempDir.resolve("financing.jfr");
+        try (var recording = new Recording()) {
+            EVENTS.forEach(recording::enable);
+            recording.start();
+            financingService.finance(mode);
+            recording.stop();
+            recording.dump(file);
+        }
+
+        var phases = FinancingRecordingAnalyzer.analyze(file);
+
+        assertThat(phases).extracting(FinancingRecordingAnalyzer.Phase::name)
+                .contains(FinancingRecordingAnalyzer.RUN_PHASE, FinancingRecordingAnalyzer.CHUNK_PHASE,
+                        FinancingRecordingAnalyzer.OTHER_PHASE)
+                .anyMatch(name -> name.startsWith(FinancingRecordingAnalyzer.QUERY_PHASE_PREFIX));
+        var run = phases.stream().filter(phase -> phase.name().equals(FinancingRecordingAnalyzer.RUN_PHASE)).findFirst().orElseThrow();
+        var chunks = phases.stream().filter(phase -> phase.name().equals(FinancingRecordingAnalyzer.CHUNK_PHASE)).findFirst().orElseThrow();
+        assertThat(run.events()).isEqualTo(1);
+        assertThat(run.rows()).isEqualTo(10);
+        assertThat(chunks.events()).isEqualTo(4);
+        assertThat(chunks.rows()).isEqualTo(10);
+        assertThat(chunks.total()).isLessThanOrEqualTo(run.total());
+    }
+}
@@ -0,0 +1,61 @@
+package lu.crx.financing.performance;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.Supplier;
+
+/**
+ * Measures the bytes allocated by the current thread with {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes},
+ * to keep the heap churn of the Java side of the financing within budgets and the GC pauses on the shared batch hosts
+ * short.
+ * <p>
+ * The action is warmed up first, so that the JIT compiles it and escape analysis removes what it can, and the lowest
+ * allocation of the measured iterations is reported, the other ones may include the allocations of the JIT or of
+ * the class loading.
+ */
+public final class AllocationMeter {
+
+    private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static final int WARMUP_ITERATIONS = 200;
+
+    private static final int MEASURED_ITERATIONS = 20;
+
+    private static volatile Object sink;
+
+    private AllocationMeter() {
+    }
+
+    /**
+     * @param items number of items (e.g. invoices) processed by one execution of the action
+     * @return bytes allocated per item by one execution of the action
+     */
+    public static double bytesPerItem(Supplier<?> action, int items) {
+        if (!THREAD_MX_BEAN.isThreadAllocatedMemorySupported()) {
+            throw new IllegalStateException("Thread allocated memory is not supported by this JVM");
+        }
+        THREAD_MX_BEAN.setThreadAllocatedMemoryEnabled(true);
+
+        for (var i = 0; i < WARMUP_ITERATIONS; i++) {
+            sink = action.get();
+        }
+
+        var threadId = Thread.currentThread().threadId();
+        var lowest = Long.MAX_VALUE;
+        for (var i = 0; i < MEASURED_ITERATIONS; i++) {
+            var before = THREAD_MX_BEAN.getThreadAllocatedBytes(threadId);
+            sink = action.get();
+            lowest = Math.min(lowest, THREAD_MX_BEAN.getThreadAllocatedBytes(threadId) - before);
+        }
+        sink = null;
+
+        return (double) lowest / items;
+    }
+
+    /**
+     * @return budget in bytes per item, overridable with {@code -Dallocation.budget.<name>=<bytes>}
+     */
+    public static long budget(String name, long defaultBytesPerItem) {
+        return Long.getLong("allocation.budget." + name, defaultBytesPerItem);
+    }
+}
@@ -0,0 +1,79 @@
+package lu.crx.financing.performance;
+
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.fixtures.DatabaseSnapshot;
+import lu.crx.financing.services.FinancingService;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.sql.DataSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Restores of the reference scenario (see {@link PerformanceScenario}) from a {@link DatabaseSnapshot} between
+ * financing runs, every run has to find the same unfinanced invoices.
+ * <p>
+ * Excluded from the default build, run it with {@code mvn test -Pperformance -Dtest=DatabaseSnapshotPerformanceTest},
+ * the sizes of the scenario can be overridden as for {@link FinancingServicePerformanceTest}.
+ */
+@Slf4j
+@Tag("performance")
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:./target/performance/snapshot",
+        "spring.jpa.hibernate.ddl-auto=create",
+        "spring.jpa.show-sql=false"
+})
+@ActiveProfiles("test")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class DatabaseSnapshotPerformanceTest {
+
+    @Autowired
+    private FinancingService financingService;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final PerformanceScenario scenario = PerformanceScenario.fromSystemProperties();
+
+    private DatabaseSnapshot snapshot;
+
+    private long unfinanced;
+
+    @BeforeAll
+    public void seed() {
+        snapshot = new DatabaseSnapshot(dataSource, "performance");
+        snapshot.restore(() -> scenario.seed(jdbcTemplate));
+        unfinanced = countUnfinanced();
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = FinancingService.QueryMode.class, names = {"QUERY_FOR_LOWEST_RATE", "QUERY_FOR_EQUIVALENCE_CLASSES"})
+    void shouldRestoreScenarioAfterFinancing(FinancingService.QueryMode mode) {
+        financingService.finance(mode);
+        assertThat(countUnfinanced()).isLessThan(unfinanced);
+
+        var start = System.nanoTime();
+        snapshot.restore();
+        var elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        log.info("Scenario {} restored in {} ms after financing in mode {}", scenario, elapsedMillis, mode);
+        assertThat(countUnfinanced()).isEqualTo(unfinanced);
+        assertThat(jdbcTemplate.queryForObject("select count(*) from financing", Long.class))
+                .isEqualTo(scenario.financedInvoices());
+    }
+
+    private long countUnfinanced() {
+        return jdbcTemplate.queryForObject("select count(*) from invoice where financing_id is null", Long.class);
+    }
+}
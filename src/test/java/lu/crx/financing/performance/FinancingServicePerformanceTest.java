@@ -0,0 +1,118 @@
+package lu.crx.financing.performance;
+
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.services.FinancingService;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Performance SLA test for the reference scenario described in the README, see {@link PerformanceScenario}.
+ * <p>
+ * Excluded from the default build, run it with {@code mvn test -Pperformance}. The time budget is 30 seconds per
+ * query mode and can be overridden with {@code -Dperformance.budget=PT20S} or per mode with
+ * {@code -Dperformance.budget.QUERY_FOR_ALL=PT45S}. Timings are appended to {@code target/performance/results.csv}.
+ */
+@Slf4j
+@Tag("performance")
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:./target/performance/financing",
+        "spring.jpa.hibernate.ddl-auto=create",
+        "spring.jpa.show-sql=false"
+})
+@ActiveProfiles("test")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class FinancingServicePerformanceTest {
+
+    private static final Path RESULTS_FILE = Path.of("target", "performance", "results.csv");
+
+    private static final String RESULTS_HEADER =
+            "timestamp,mode,creditors,purchasers,unfinancedInvoices,financedInvoices,financed,durationMs,budgetMs,passed";
+
+    @Autowired
+    private FinancingService financingService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final PerformanceScenario scenario = PerformanceScenario.fromSystemProperties();
+
+    @BeforeAll
+    public void seed() {
+        scenario.seed(jdbcTemplate);
+    }
+
+    @ParameterizedTest
+    @EnumSource(FinancingService.QueryMode.class)
+    void shouldFinanceWithinBudget(FinancingService.QueryMode mode) throws IOException {
+        var budget = budget(mode);
+        var lastFinancingId = jdbcTemplate.queryForObject("select coalesce(max(id), 0) from financing", Long.class);
+
+        var start = System.nanoTime();
+        financingService.finance(mode);
+        var duration = Duration.ofNanos(System.nanoTime() - start);
+
+        var financed = jdbcTemplate.queryForObject(
+                "select count(*) from invoice where financing_id > ?", Long.class, lastFinancingId);
+        var passed = duration.compareTo(budget) <= 0;
+
+        log.info("Financing in mode {} financed {} invoices in {} ms (budget {} ms)",
+                mode, financed, duration.toMillis(), budget.toMillis());
+        recordResult(mode, financed, duration, budget, passed);
+        unfinance(lastFinancingId);
+
+        assertThat(financed).isPositive();
+        assertThat(duration).as("financing duration in mode %s", mode).isLessThanOrEqualTo(budget);
+    }
+
+    private static Duration budget(FinancingService.QueryMode mode) {
+        var defaultBudget = System.getProperty("performance.budget", "PT30S");
+        return Duration.parse(System.getProperty("performance.budget." + mode.name(), defaultBudget));
+    }
+
+    /*
+    Reverting the financing and the eligibility calendar of the test, so that every mode evaluates the same set of invoices.
+     */
+    private void unfinance(long lastFinancingId) {
+        jdbcTemplate.update("update invoice set financing_id = null where financing_id > ?", lastFinancingId);
+        jdbcTemplate.update("delete from financing where id > ?", lastFinancingId);
+        jdbcTemplate.update("""
+                update invoice set next_eligibility_date = null, permanently_ineligible = false
+                where financing_id is null""");
+    }
+
+    private void recordResult(FinancingService.QueryMode mode, long financed, Duration duration, Duration budget,
+                              boolean passed) throws IOException {
+        Files.createDirectories(RESULTS_FILE.getParent());
+        if (Files.notExists(RESULTS_FILE)) {
+            Files.writeString(RESULTS_FILE, RESULTS_HEADER + System.lineSeparator());
+        }
+        var line = String.join(",",
+                Instant.now().toString(),
+                mode.name(),
+                String.valueOf(scenario.creditors()),
+                String.valueOf(scenario.purchasers()),
+                String.valueOf(scenario.unfinancedInvoices()),
+                String.valueOf(scenario.financedInvoices()),
+                String.valueOf(financed),
+                String.valueOf(duration.toMillis()),
+                String.valueOf(budget.toMillis()),
+                String.valueOf(passed));
+        Files.writeString(RESULTS_FILE, line + System.lineSeparator(), StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,112 @@
+package lu.crx.financing.performance;
+
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.services.InvoiceImportService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Throughput test of the CSV import of invoices, on a generated file referencing the creditors and debtors
+ * of the reference scenario (see {@link PerformanceScenario}), every 1,000th row being invalid.
+ * <p>
+ * Excluded from the default build, run it with {@code mvn test -Pperformance -Dtest=InvoiceImportPerformanceTest}.
+ * The number of rows can be overridden with {@code -Dperformance.importedInvoices}, the required throughput
+ * with {@code -Dperformance.importRate} (invoices per minute, 1,000,000 by default). Timings are appended
+ * to {@code target/performance/import-results.csv}.
+ */
+@Slf4j
+@Tag("performance")
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:./target/performance/import",
+        "spring.jpa.hibernate.ddl-auto=create",
+        "spring.jpa.show-sql=false"
+})
+@ActiveProfiles("test")
+public class InvoiceImportPerformanceTest {
+
+    private static final Path CSV_FILE = Path.of("target", "performance", "invoices.csv");
+
+    private static final Path RESULTS_FILE = Path.of("target", "performance", "import-results.csv");
+
+    private static final String RESULTS_HEADER = "timestamp,rows,imported,rejected,durationMs,invoicesPerMinute,passed";
+
+    @Autowired
+    private InvoiceImportService invoiceImportService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final PerformanceScenario scenario = new PerformanceScenario(100, 100, 100, 0, 0);
+
+    private final int rows = Integer.getInteger("performance.importedInvoices", 1_000_000);
+
+    private final long requiredRate = Long.getLong("performance.importRate", 1_000_000);
+
+    @Test
+    void shouldImportWithinRequiredRate() throws IOException {
+        scenario.seed(jdbcTemplate);
+        writeCsv();
+
+        var start = System.nanoTime();
+        var result = invoiceImportService.importFile(CSV_FILE);
+        var duration = Duration.ofNanos(System.nanoTime() - start);
+
+        var rate = result.importedInvoices() * 60_000 / Math.max(1, duration.toMillis());
+        var passed = rate >= requiredRate;
+        log.info("{} invoices imported and {} rows rejected in {} ms, {} invoices per minute (required {})",
+                result.importedInvoices(), result.rejectedRows(), duration.toMillis(), rate, requiredRate);
+        recordResult(result.importedInvoices(), result.rejectedRows(), duration, rate, passed);
+
+        assertThat(result.rejectedRows()).isEqualTo(rows / 1000);
+        assertThat(result.importedInvoices()).isEqualTo(rows - rows / 1000);
+        assertThat(jdbcTemplate.queryForObject("select count(*) from invoice", Long.class))
+                .isEqualTo(result.importedInvoices());
+        assertThat(rate).as("imported invoices per minute").isGreaterThanOrEqualTo(requiredRate);
+    }
+
+    private void writeCsv() throws IOException {
+        Files.createDirectories(CSV_FILE.getParent());
+        var today = LocalDate.now();
+        try (var writer = Files.newBufferedWriter(CSV_FILE, StandardCharsets.UTF_8)) {
+            writer.write(InvoiceImportService.CSV_HEADER);
+            writer.write('\n');
+            for (var x = 1; x <= rows; x++) {
+                var creditor = x % 1000 == 0 ? "Unknown" : "Creditor " + (1 + x % scenario.creditors());
+                writer.write(creditor + ",Debtor " + (1 + x % scenario.debtors()) + ","
+                        + today.plusDays(1 + (x * 7L) % 120) + "," + (10000 + (x * 7919L) % 10000000) + "\n");
+            }
+        }
+    }
+
+    private void recordResult(long imported, long rejected, Duration duration, long rate, boolean passed)
+            throws IOException {
+        Files.createDirectories(RESULTS_FILE.getParent());
+        if (Files.notExists(RESULTS_FILE)) {
+            Files.writeString(RESULTS_FILE, RESULTS_HEADER + System.lineSeparator());
+        }
+        var line = String.join(",",
+                Instant.now().toString(),
+                String.valueOf(rows),
+                String.valueOf(imported),
+                String.valueOf(rejected),
+                String.valueOf(duration.toMillis()),
+                String.valueOf(rate),
+                String.valueOf(passed));
+        Files.writeString(RESULTS_FILE, line + System.lineSeparator(), StandardOpenOption.APPEND);
+    }
+}
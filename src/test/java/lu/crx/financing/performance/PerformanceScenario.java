@@ -0,0 +1,88 @@
+package lu.crx.financing.performance;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Reference performance scenario from the README: 10,000 unfinanced invoices for 100 creditors and 100 purchasers,
+ * with 1,000,000 previously financed invoices in the database.
+ * <p>
+ * Every size can be overridden with a system property (e.g. {@code -Dperformance.financedInvoices=10000}) to run
+ * a scaled down version of the scenario locally.
+ * <p>
+ * The data is generated by set based inserts over {@code system_range}, seeding it through the entities would take
+ * longer than the financing itself.
+ */
+@Slf4j
+public record PerformanceScenario(int creditors, int debtors, int purchasers, int unfinancedInvoices, int financedInvoices) {
+
+    public static PerformanceScenario fromSystemProperties() {
+        return new PerformanceScenario(
+                Integer.getInteger("performance.creditors", 100),
+                Integer.getInteger("performance.debtors", 100),
+                Integer.getInteger("performance.purchasers", 100),
+                Integer.getInteger("performance.unfinancedInvoices", 10_000),
+                Integer.getInteger("performance.financedInvoices", 1_000_000));
+    }
+
+    /*
+    Every purchaser has settings for every creditor, so each unfinanced invoice is a candidate for all purchasers.
+    Rates, terms and maturity dates are spread with modulo arithmetic, so that some invoices are financed
+    by some purchasers only and some are not financed at all.
+     */
+    public void seed(JdbcTemplate jdbcTemplate) {
+        log.info("Seeding performance scenario: {}", this);
+
+        jdbcTemplate.update("""
+                insert into creditor (id, name, max_financing_rate_in_bps)
+                select x, 'Creditor ' || x, 3 + mod(x, 8) from system_range(1, ?)""", creditors);
+
+        jdbcTemplate.update("""
+                insert into debtor (id, name)
+                select x, 'Debtor ' || x from system_range(1, ?)""", debtors);
+
+        jdbcTemplate.update("""
+                insert into purchaser (id, name, minimum_financing_term_in_days)
+                select x, 'Purchaser ' || x, 5 + mod(x, 20) from system_range(1, ?)""", purchasers);
+
+        jdbcTemplate.update("""
+                insert into purchaser_financing_settings (id, purchaser_id, creditor_id, annual_rate_in_bps)
+                select (p.x - 1) * ? + c.x, p.x, c.x, 20 + mod(p.x * 31 + c.x * 17, 60)
+                from system_range(1, ?) p cross join system_range(1, ?) c""", creditors, purchasers, creditors);
+
+        jdbcTemplate.update("""
+                insert into financing_run (id, mode, financing_date, started_at, completed_at, financed_invoices)
+                values (1, 'SEED', current_date, current_timestamp, current_timestamp, ?)""", financedInvoices);
+
+        jdbcTemplate.update("""
+                insert into financing (id, days_to_finance, early_payment_amount_in_cents, financing_rate_in_bps, purchaser_id,
+                                       run_id, financing_date)
+                select x, 30, 99000, 3, 1 + mod(x, ?), 1, dateadd(day, -mod(x, 365), current_date)
+                from system_range(1, ?)""", purchasers, financedInvoices);
+
+        jdbcTemplate.update("""
+                insert into invoice (id, creditor_id, debtor_id, financing_id, maturity_date, value_in_cents)
+                select x, 1 + mod(x, ?), 1 + mod(x, ?), x, dateadd(day, mod(x, 90) - 30, current_date), 100000
+                from system_range(1, ?)""", creditors, debtors, financedInvoices);
+
+        jdbcTemplate.update("""
+                insert into invoice (id, creditor_id, debtor_id, maturity_date, value_in_cents)
+                select x, 1 + mod(x, ?), 1 + mod(x, ?), dateadd(day, 1 + mod(x * 7, 120), current_date), 10000 + mod(x * 7919, 10000000)
+                from system_range(?, ?)""", creditors, debtors, financedInvoices + 1, financedInvoices + unfinancedInvoices);
+
+        // moving the sequences past the explicitly assigned ids, so that the entities created by the financing don't clash
+        restartSequence(jdbcTemplate, "creditor_seq", creditors);
+        restartSequence(jdbcTemplate, "debtor_seq", debtors);
+        restartSequence(jdbcTemplate, "purchaser_seq", purchasers);
+        restartSequence(jdbcTemplate, "purchaser_financing_settings_seq", (long) purchasers * creditors);
+        restartSequence(jdbcTemplate, "financing_run_seq", 1);
+        restartSequence(jdbcTemplate, "financing_seq", financedInvoices);
+        restartSequence(jdbcTemplate, "invoice_seq", (long) financedInvoices + unfinancedInvoices);
+
+        log.info("Performance scenario seeded");
+    }
+
+    private static void restartSequence(JdbcTemplate jdbcTemplate, String sequence, long maxId) {
+        jdbcTemplate.execute("alter sequence " + sequence + " restart with " + (maxId + 100));
+    }
+}
@@ -0,0 +1,146 @@
+package lu.crx.financing.performance;
+
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.dtos.PurchaserSettingsTuple;
+import lu.crx.financing.services.CreditorPurchasers;
+import lu.crx.financing.services.PurchaserSelector;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Benchmark of the vectorized selection of the purchasers against the scalar loop, on the settings of the reference
+ * scenario (see {@link PerformanceScenario}) held in memory, so that only the selection itself is measured.
+ * <p>
+ * Excluded from the default build, run it with {@code mvn test -Pperformance -Dtest=PurchaserSelectionBenchmarkTest}.
+ * The sizes can be overridden with {@code -Dperformance.creditors}, {@code -Dperformance.purchasers} and
+ * {@code -Dperformance.selectedInvoices}. Timings are appended to {@code target/performance/selection-results.csv}.
+ */
+@Slf4j
+@Tag("performance")
+public class PurchaserSelectionBenchmarkTest {
+
+    private static final Path RESULTS_FILE = Path.of("target", "performance", "selection-results.csv");
+
+    private static final String RESULTS_HEADER = "timestamp,selector,creditors,purchasers,invoices,nanosPerInvoice,selected";
+
+    private static final int WARMUPS = 5;
+
+    private static final int MEASUREMENTS = 10;
+
+    private record Settings(Long creditorId, Long purchaserId, Integer annualRateInBps,
+                            Integer minimumFinancingTermInDays) implements PurchaserSettingsTuple {
+
+        @Override
+        public Long getCreditorId() {
+            return creditorId;
+        }
+
+        @Override
+        public Long getPurchaserId() {
+            return purchaserId;
+        }
+
+        @Override
+        public Integer getAnnualRateInBps() {
+            return annualRateInBps;
+        }
+
+        @Override
+        public Integer getMinimumFinancingTermInDays() {
+            return minimumFinancingTermInDays;
+        }
+    }
+
+    private final int creditors = Integer.getInteger("performance.creditors", 100);
+
+    private final int purchasers = Integer.getInteger("performance.purchasers", 100);
+
+    private final int invoices = Integer.getInteger("performance.selectedInvoices", 1_000_000);
+
+    @Test
+    void shouldSelectSamePurchasersWithVectorApiAsWithScalarLoop() throws IOException {
+        var purchasersByCreditor = purchasersByCreditor();
+        var maxRates = IntStream.rangeClosed(0, creditors).map(c -> 3 + c % 8).toArray();
+        var invoiceCreditors = IntStream.rangeClosed(1, invoices).map(x -> 1 + x % creditors).toArray();
+        var invoiceDays = IntStream.rangeClosed(1, invoices).map(x -> 1 + (x * 7) % 120).toArray();
+
+        var scalar = PurchaserSelector.create(false);
+        var vector = PurchaserSelector.create(true);
+        assertThat(vector).as("vector selector, is jdk.incubator.vector added?").isNotInstanceOf(scalar.getClass());
+
+        var scalarSelected = new int[invoices];
+        var vectorSelected = new int[invoices];
+        var scalarNanos = measure(scalar, purchasersByCreditor, maxRates, invoiceCreditors, invoiceDays, scalarSelected);
+        var vectorNanos = measure(vector, purchasersByCreditor, maxRates, invoiceCreditors, invoiceDays, vectorSelected);
+
+        var selected = (int) IntStream.of(vectorSelected).filter(index -> index >= 0).count();
+        log.info("{}: {} ns per invoice, {}: {} ns per invoice, speedup {}, {} of {} invoices financed",
+                scalar, "%.1f".formatted(scalarNanos), vector, "%.1f".formatted(vectorNanos),
+                "%.2f".formatted(scalarNanos / vectorNanos), selected, invoices);
+        recordResult(scalar, scalarNanos, selected);
+        recordResult(vector, vectorNanos, selected);
+
+        assertThat(vectorSelected).isEqualTo(scalarSelected);
+    }
+
+    /*
+    Same rates and terms as PerformanceScenario: every purchaser has settings for every creditor.
+     */
+    private CreditorPurchasers[] purchasersByCreditor() {
+        var purchasersByCreditor = new CreditorPurchasers[creditors + 1];
+        for (var c = 1; c <= creditors; c++) {
+            var settings = new ArrayList<Settings>();
+            for (var p = 1; p <= purchasers; p++) {
+                settings.add(new Settings((long) c, (long) p, 20 + (p * 31 + c * 17) % 60, 5 + p % 20));
+            }
+            purchasersByCreditor[c] = CreditorPurchasers.of(settings);
+        }
+        return purchasersByCreditor;
+    }
+
+    /**
+     * @return best time per invoice in nanoseconds
+     */
+    private double measure(PurchaserSelector selector, CreditorPurchasers[] purchasersByCreditor, int[] maxRates,
+                           int[] invoiceCreditors, int[] invoiceDays, int[] selected) {
+        var best = Long.MAX_VALUE;
+        for (var run = 0; run < WARMUPS + MEASUREMENTS; run++) {
+            var startedAt = System.nanoTime();
+            for (var i = 0; i < invoices; i++) {
+                var creditor = invoiceCreditors[i];
+                selected[i] = selector.select(purchasersByCreditor[creditor], invoiceDays[i], maxRates[creditor]);
+            }
+            var elapsed = System.nanoTime() - startedAt;
+            if (run >= WARMUPS) {
+                best = Math.min(best, elapsed);
+            }
+        }
+        return (double) best / invoices;
+    }
+
+    private void recordResult(PurchaserSelector selector, double nanosPerInvoice, int selected) throws IOException {
+        Files.createDirectories(RESULTS_FILE.getParent());
+        if (Files.notExists(RESULTS_FILE)) {
+            Files.writeString(RESULTS_FILE, RESULTS_HEADER + System.lineSeparator());
+        }
+        var line = String.join(",",
+                Instant.now().toString(),
+                selector.getClass().getSimpleName(),
+                String.valueOf(creditors),
+                String.valueOf(purchasers),
+                String.valueOf(invoices),
+                "%.2f".formatted(nanosPerInvoice),
+                String.valueOf(selected));
+        Files.writeString(RESULTS_FILE, line + System.lineSeparator(), StandardOpenOption.APPEND);
+    }
+}
@@ -3,22 +3,30 @@ package lu.crx.financing.repositories;
 import jakarta.persistence.EntityManager;
 import jakarta.transaction.Transactional;
 import lu.crx.financing.dtos.InvoiceTuple;
+import lu.crx.financing.fixtures.DatabaseSnapshot;
 import lu.crx.financing.services.SeedingService;
-import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
-import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ActiveProfiles;
 
+import javax.sql.DataSource;
 import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
-@SpringBootTest
+/**
+ * The tests share a context with a database of their own, the seeded data is restored from a snapshot before every test.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:invoice-repository-test;DB_CLOSE_DELAY=-1",
+        "spring.jpa.hibernate.ddl-auto=create"
+})
 @ActiveProfiles("test")
-@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
 public class InvoiceRepositoryTest {
 
     @Autowired
@@ -30,20 +38,29 @@ public class InvoiceRepositoryTest {
     @Autowired
     private SeedingService seedingService;
 
-    @BeforeEach
-    public void init() {
-        seedingService.seedMasterData();
-        seedingService.seedInvoices();
+    @Autowired
+    private DataSource dataSource;
+
+    private DatabaseSnapshot snapshot;
+
+    @BeforeAll
+    public void seed() {
+        snapshot = new DatabaseSnapshot(dataSource, "seeded");
+        snapshot.restore(() -> {
+            seedingService.seedMasterData();
+            seedingService.seedInvoices();
+        });
     }
 
-    @AfterEach
-    public void empty() {
-        seedingService.emptyDatabase();
+    @BeforeEach
+    public void init() {
+        snapshot.restore();
     }
 
     private void markAllInvoicesFinanced() {
         var sql = """
-                insert into financing (id, days_to_finance, early_payment_amount_in_cents, financing_rate_in_bps, purchaser_id) values (1, 1, 1, 1, 1);
+                insert into financing_run (id, mode, financing_date, started_at, financed_invoices) values (1, 'TEST', current_date, current_timestamp, 1);
+                insert into financing (id, days_to_finance, early_payment_amount_in_cents, financing_rate_in_bps, purchaser_id, run_id, financing_date) values (1, 1, 1, 1, 1, 1, current_date);
                 update invoice set financing_id = 1;
                 """;
         entityManager.createNativeQuery(sql).executeUpdate();
@@ -76,6 +93,21 @@ public class InvoiceRepositoryTest {
         assertThat(invoices.stream().map(InvoiceTuple::getPurchaserId)).doesNotContain(4L, 8L, 9L, 15L);
     }
 
+    @Test
+    @Transactional
+    void shouldReturnSinglePurchaserWithTheLowestIdOnTieWhenFindNotFinancedForLowestRatePurchaser() {
+        // FatBank matches the 30 bps of MegaBank for Coffee Beans LLC
+        entityManager.createNativeQuery("""
+                update purchaser_financing_settings set annual_rate_in_bps = 30
+                where purchaser_id = 2 and creditor_id = 1""").executeUpdate();
+
+        var invoices = invoiceRepository.findNotFinancedForLowestRatePurchaser();
+
+        assertThat(invoices).hasSize(10);
+        assertThat(invoices.stream().map(InvoiceTuple::getInvoiceId)).doesNotHaveDuplicates();
+        assertThat(invoices.stream().filter(it -> it.getInvoiceId().equals(1L)).map(InvoiceTuple::getPurchaserId).findFirst().orElseThrow()).isEqualTo(2L);
+    }
+
     @Test
     void shouldExcludeInvoicesWhenMinimumFinancingTermIsNotFulfilledWhenFindNotFinancedForAllPurchasers() {
         var invoices = invoiceRepository.findNotFinancedForAllPurchasers().stream()
@@ -0,0 +1,108 @@
+package lu.crx.financing.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CsvLineReaderTest {
+
+    @Test
+    void shouldSplitPlainAndQuotedFields() throws IOException {
+        var reader = reader("a,\"b, \"\"c\"\"\",,d\r\n\n\"\"\n", 64);
+
+        assertThat(reader.next()).isTrue();
+        assertThat(reader.lineNumber()).isEqualTo(1);
+        assertThat(fields(reader)).containsExactly("a", "b, \"c\"", "", "d");
+        assertThat(reader.isEmpty(2)).isTrue();
+
+        assertThat(reader.next()).isTrue();
+        assertThat(reader.lineNumber()).isEqualTo(3);
+        assertThat(fields(reader)).containsExactly("");
+
+        assertThat(reader.next()).isFalse();
+    }
+
+    /*
+    A buffer of 8 bytes holds a single line at most, so every line is read after compacting the buffer.
+     */
+    @Test
+    void shouldReadLinesAcrossBufferRefills() throws IOException {
+        var reader = reader("1,22\n333,4\n55,666", 8);
+
+        var lines = new ArrayList<List<String>>();
+        while (reader.next()) {
+            lines.add(fields(reader));
+        }
+
+        assertThat(lines).containsExactly(List.of("1", "22"), List.of("333", "4"), List.of("55", "666"));
+    }
+
+    @Test
+    void shouldReportMalformedLinesAndGoOn() throws IOException {
+        var reader = reader("\"open\n\"x\"y,z\nthis line is too long\n" + ",".repeat(CsvLineReader.MAX_FIELDS) + "\nok\n", 20);
+
+        var malformations = new ArrayList<String>();
+        while (reader.next()) {
+            malformations.add(reader.malformation() == null ? fields(reader).toString() : reader.malformation());
+        }
+
+        assertThat(malformations).containsExactly(
+                "Unterminated quoted field 1",
+                "Unexpected character after quoted field 1",
+                "Line longer than 20 bytes",
+                "More than 16 fields",
+                "[ok]");
+    }
+
+    @Test
+    void shouldParseNumbersAndDates() throws IOException {
+        var reader = reader("42,-7,9223372036854775808,4x,,2024-02-29,2023-02-29,2024-2-29\n", 128);
+        assertThat(reader.next()).isTrue();
+
+        assertThat(reader.parseLong(0)).isEqualTo(42);
+        assertThat(reader.parseLong(1)).isEqualTo(-7);
+        assertThat(reader.parseLong(2)).isEqualTo(CsvLineReader.INVALID);
+        assertThat(reader.parseLong(3)).isEqualTo(CsvLineReader.INVALID);
+        assertThat(reader.parseLong(4)).isEqualTo(CsvLineReader.INVALID);
+        assertThat(reader.parseDate(5)).isEqualTo(LocalDate.of(2024, 2, 29).toEpochDay());
+        assertThat(reader.parseDate(6)).isEqualTo(CsvLineReader.INVALID);
+        assertThat(reader.parseDate(7)).isEqualTo(CsvLineReader.INVALID);
+    }
+
+    @Test
+    void shouldLookUpIdsByBytesOfName() throws IOException {
+        var ids = new IdsByName(3);
+        ids.put("Coffee Beans LLC", 1);
+        ids.put("Café, Inc", 2);
+        ids.put("Twins", 3);
+        ids.put("Twins", 4);
+        var reader = reader("Coffee Beans LLC,\"Café, Inc\",Twins,Coffee Beans\n", 64);
+        assertThat(reader.next()).isTrue();
+
+        assertThat(reader.id(0, ids)).isEqualTo(1);
+        assertThat(reader.id(1, ids)).isEqualTo(2);
+        assertThat(reader.id(2, ids)).isEqualTo(IdsByName.AMBIGUOUS);
+        assertThat(reader.id(3, ids)).isEqualTo(IdsByName.UNKNOWN);
+    }
+
+    private static CsvLineReader reader(String content, int bufferSize) {
+        var input = new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+        return new CsvLineReader(Channels.newChannel(input), bufferSize);
+    }
+
+    private static List<String> fields(CsvLineReader reader) {
+        var fields = new ArrayList<String>();
+        for (var i = 0; i < reader.fieldCount(); i++) {
+            fields.add(reader.text(i));
+        }
+        return fields;
+    }
+}
@@ -0,0 +1,127 @@
+package lu.crx.financing.services;
+
+import lu.crx.financing.entities.Invoice;
+import lu.crx.financing.repositories.FinancingRunRepository;
+import lu.crx.financing.repositories.InvoiceRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static lu.crx.financing.services.FinancingService.QueryMode.QUERY_FOR_ALL;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+public class EligibilityCalendarServiceTest {
+
+    @Autowired
+    private SeedingService seedingService;
+
+    @Autowired
+    private FinancingService financingService;
+
+    @Autowired
+    private EligibilityCalendarService eligibilityCalendarService;
+
+    @Autowired
+    private InvoiceRepository invoiceRepository;
+
+    @Autowired
+    private FinancingRunRepository financingRunRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void init() {
+        seedingService.seedMasterData();
+        seedingService.seedInvoices();
+    }
+
+    @AfterEach
+    public void empty() {
+        seedingService.emptyDatabase();
+    }
+
+    @Test
+    void shouldScheduleRejectedInvoices() {
+        financingService.finance(QUERY_FOR_ALL);
+
+        var invoices = invoicesById();
+        var today = LocalDate.now();
+
+        // the rate is too high today, MegaBank finances invoice 4 from its 60th day before maturity
+        assertThat(invoices.get(4L).getNextEligibilityDate()).isEqualTo(today.plusDays(20));
+        // shorter than the minimum term of every purchaser
+        assertThat(invoices.get(5L).isPermanentlyIneligible()).isTrue();
+        assertThat(invoices.get(5L).getNextEligibilityDate()).isNull();
+        assertThat(invoices.get(8L).getNextEligibilityDate()).isEqualTo(today.plusDays(9));
+        assertThat(invoices.get(9L).getNextEligibilityDate()).isEqualTo(today.plusDays(11));
+        assertThat(invoices.get(15L).getNextEligibilityDate()).isEqualTo(today.plusDays(22));
+        assertThat(invoices.values().stream().filter(i -> i.getFinancing() != null))
+                .allMatch(i -> i.getNextEligibilityDate() == null && !i.isPermanentlyIneligible());
+    }
+
+    @Test
+    void shouldSkipInvoicesScheduledForLaterDay() {
+        jdbcTemplate.update("update invoice set next_eligibility_date = current_date + 1 where id = 1");
+        jdbcTemplate.update("update invoice set permanently_ineligible = true where id = 2");
+        jdbcTemplate.update("update invoice set next_eligibility_date = current_date where id = 3");
+
+        assertThat(invoiceRepository.findNotFinancedForAllPurchasers()).extracting("invoiceId")
+                .doesNotContain(1L, 2L)
+                .contains(3L);
+        assertThat(invoiceRepository.findNotFinancedForLowestRatePurchaser()).extracting("invoiceId")
+                .doesNotContain(1L, 2L)
+                .contains(3L);
+    }
+
+    @Test
+    void shouldNotReevaluateScheduledInvoices() {
+        financingService.finance(QUERY_FOR_ALL);
+
+        assertThat(eligibilityCalendarService.schedule()).isZero();
+    }
+
+    @Test
+    void shouldClearCalendarWhenSettingsChange() {
+        financingService.finance(QUERY_FOR_ALL);
+        var fingerprint = eligibilityCalendarService.settingsFingerprint();
+
+        // MegaBank lowers its rate for Coffee Beans LLC, invoice 4 becomes eligible today
+        jdbcTemplate.update("update purchaser_financing_settings set annual_rate_in_bps = 10 where purchaser_id = 3 and creditor_id = 1");
+        financingService.finance(QUERY_FOR_ALL);
+
+        var invoices = invoicesById();
+        assertThat(eligibilityCalendarService.settingsFingerprint()).isNotEqualTo(fingerprint);
+        assertThat(invoices.get(4L).getFinancing()).isNotNull();
+        assertThat(invoices.get(5L).isPermanentlyIneligible()).isTrue();
+        assertThat(financingRunRepository.findAll())
+                .extracting("settingsFingerprint")
+                .containsExactly(fingerprint, eligibilityCalendarService.settingsFingerprint());
+    }
+
+    @Test
+    void shouldKeepCalendarWhenSettingsDontChange() {
+        financingService.finance(QUERY_FOR_ALL);
+        var run = financingRunRepository.findAll().getFirst();
+
+        assertThat(eligibilityCalendarService.refresh(run)).isFalse();
+        assertThat(invoicesById().get(4L).getNextEligibilityDate()).isNotNull();
+    }
+
+    private Map<Long, Invoice> invoicesById() {
+        return invoiceRepository.findAll().stream().collect(Collectors.toMap(Invoice::getId, Function.identity()));
+    }
+}
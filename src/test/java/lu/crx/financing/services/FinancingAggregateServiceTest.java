@@ -0,0 +1,84 @@
+package lu.crx.financing.services;
+
+import lu.crx.financing.dtos.DailyFinancingAggregate;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDate;
+
+import static lu.crx.financing.services.FinancingService.QueryMode.QUERY_FOR_LOWEST_RATE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
+import static org.assertj.core.api.Assertions.tuple;
+
+@SpringBootTest(properties = "financing.chunk-size=3")
+@ActiveProfiles("test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+public class FinancingAggregateServiceTest {
+
+    @Autowired
+    private SeedingService seedingService;
+
+    @Autowired
+    private FinancingService financingService;
+
+    @Autowired
+    private FinancingAggregateService financingAggregateService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void init() {
+        seedingService.seedMasterData();
+        seedingService.seedInvoices();
+        financingService.finance(QUERY_FOR_LOWEST_RATE);
+    }
+
+    @AfterEach
+    public void empty() {
+        seedingService.emptyDatabase();
+    }
+
+    @Test
+    void shouldAggregateFinancingPerPurchaserAcrossChunks() {
+        var today = LocalDate.now();
+
+        var aggregates = financingAggregateService.getPurchaserAggregates(null, today, today);
+
+        assertThat(aggregates).extracting(DailyFinancingAggregate::ownerId, DailyFinancingAggregate::invoiceCount)
+                .containsExactly(
+                        tuple(1L, 1L),
+                        tuple(2L, 3L),
+                        tuple(3L, 6L));
+        assertThat(aggregates.stream().mapToLong(DailyFinancingAggregate::earlyPaymentAmountInCents).sum())
+                .isEqualTo(jdbcTemplate.queryForObject("select sum(early_payment_amount_in_cents) from financing", Long.class));
+    }
+
+    @Test
+    void shouldAggregateFinancingOfSingleCreditor() {
+        var today = LocalDate.now();
+
+        var aggregates = financingAggregateService.getCreditorAggregates(3L, today, today);
+
+        assertThat(aggregates).hasSize(1);
+        assertThat(aggregates.getFirst().invoiceCount()).isEqualTo(4);
+        assertThat(aggregates.getFirst().averageFinancingRateInBps()).isEqualTo(
+                jdbcTemplate.queryForObject("""
+                        select avg(f.financing_rate_in_bps) from financing f join invoice i on i.financing_id = f.id
+                        where i.creditor_id = 3""", Double.class), offset(0.001));
+    }
+
+    @Test
+    void shouldNotReturnAggregatesOutsideOfDateRange() {
+        var tomorrow = LocalDate.now().plusDays(1);
+
+        assertThat(financingAggregateService.getPurchaserAggregates(null, tomorrow, tomorrow.plusDays(10))).isEmpty();
+    }
+}
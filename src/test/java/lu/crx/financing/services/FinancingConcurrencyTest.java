@@ -0,0 +1,165 @@
+package lu.crx.financing.services;
+
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.dtos.DailyFinancingAggregate;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static lu.crx.financing.services.FinancingService.QueryMode.QUERY_FOR_ALL;
+import static lu.crx.financing.services.FinancingService.QueryMode.QUERY_FOR_ALL_BOUNDED_MEMORY;
+import static lu.crx.financing.services.FinancingService.QueryMode.QUERY_FOR_ALL_PIPELINED;
+import static lu.crx.financing.services.FinancingService.QueryMode.QUERY_FOR_EQUIVALENCE_CLASSES;
+import static lu.crx.financing.services.FinancingService.QueryMode.QUERY_FOR_LOWEST_RATE;
+import static lu.crx.financing.services.FinancingService.QueryMode.QUERY_FOR_LOWEST_RATE_IN_MEMORY;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/**
+ * Overlapping financing runs of all modes over the same invoices, none of them may be financed twice.
+ * <p>
+ * The throughput has to hold too: the overlapping runs may take at most {@code concurrency.maxSlowdown} times
+ * (2.5 by default) as long as the slowest of the modes run one after another once warmed up. Runs waiting for the claims
+ * of one another instead of skipping them (a lock convoy) take about as long as all the sequential runs and exceed it.
+ */
+@Slf4j
+@SpringBootTest(properties = "financing.chunk-size=50")
+@ActiveProfiles("test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+public class FinancingConcurrencyTest {
+
+    private static final int COPIES = 100;
+
+    private static final Duration TIMEOUT = Duration.ofMinutes(2);
+
+    private static final double MAX_SLOWDOWN = Double.parseDouble(System.getProperty("concurrency.maxSlowdown", "2.5"));
+
+    @Autowired
+    private SeedingService seedingService;
+
+    @Autowired
+    private FinancingService financingService;
+
+    @Autowired
+    private FinancingAggregateService financingAggregateService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /*
+    Every seeded invoice is copied COPIES times, 10 of the 15 seeded invoices are eligible.
+     */
+    @BeforeEach
+    public void init() {
+        seedingService.seedMasterData();
+        seedingService.seedInvoices();
+        jdbcTemplate.update("""
+                insert into invoice (id, creditor_id, debtor_id, maturity_date, value_in_cents)
+                select 10000 * r.x + i.id, i.creditor_id, i.debtor_id, i.maturity_date, i.value_in_cents + r.x
+                from invoice i
+                cross join system_range(1, ?) r""", COPIES);
+    }
+
+    @AfterEach
+    public void empty() {
+        seedingService.emptyDatabase();
+    }
+
+    @Test
+    void shouldFinanceEveryInvoiceOnceWhenRunsOverlap() {
+        var modes = Stream.of(QUERY_FOR_ALL, QUERY_FOR_LOWEST_RATE, QUERY_FOR_ALL_BOUNDED_MEMORY,
+                QUERY_FOR_EQUIVALENCE_CLASSES, QUERY_FOR_ALL_PIPELINED, QUERY_FOR_LOWEST_RATE_IN_MEMORY).toList();
+        var eligible = 10 * (COPIES + 1);
+
+        // warming up, the first runs include the class loading and the compilation of the JIT
+        for (var mode : modes) {
+            financingService.finance(mode);
+            unfinance();
+        }
+        var sequential = Duration.ZERO;
+        for (var mode : modes) {
+            var runStartedAt = System.nanoTime();
+            financingService.finance(mode);
+            var runElapsed = Duration.ofNanos(System.nanoTime() - runStartedAt);
+            log.info("Sequential run in mode {} took {} ms", mode, runElapsed.toMillis());
+            sequential = runElapsed.compareTo(sequential) > 0 ? runElapsed : sequential;
+            unfinance();
+        }
+
+        var startedAt = System.nanoTime();
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            var start = new CountDownLatch(1);
+            try (var executor = Executors.newFixedThreadPool(modes.size())) {
+                var runs = modes.stream()
+                        .map(mode -> executor.submit(() -> {
+                            start.await();
+                            financingService.finance(mode);
+                            return null;
+                        }))
+                        .toList();
+                start.countDown();
+                for (Future<?> run : runs) {
+                    try {
+                        run.get();
+                    } catch (ExecutionException e) {
+                        throw e.getCause();
+                    }
+                }
+            }
+        });
+        var elapsed = Duration.ofNanos(System.nanoTime() - startedAt);
+
+        assertThat(jdbcTemplate.queryForObject("select count(*) from invoice where financing_id is not null", Integer.class))
+                .isEqualTo(eligible);
+        assertThat(jdbcTemplate.queryForObject("select count(distinct financing_id) from invoice", Integer.class))
+                .isEqualTo(eligible);
+        assertThat(jdbcTemplate.queryForObject("select count(*) from financing", Integer.class)).isEqualTo(eligible);
+        assertThat(jdbcTemplate.queryForObject("select sum(financed_invoices) from financing_run", Integer.class))
+                .isEqualTo(eligible);
+        assertThat(jdbcTemplate.queryForObject("select count(*) from financing_run where completed_at is null", Integer.class))
+                .isZero();
+
+        var today = LocalDate.now();
+        assertThat(financingAggregateService.getPurchaserAggregates(null, today, today).stream()
+                .mapToLong(DailyFinancingAggregate::invoiceCount).sum()).isEqualTo(eligible);
+        assertThat(financingAggregateService.getCreditorAggregates(null, today, today).stream()
+                .mapToLong(DailyFinancingAggregate::invoiceCount).sum()).isEqualTo(eligible);
+
+        log.info("{} overlapping runs financed {} invoices in {} ms ({} invoices/s), slowest sequential run {} ms, "
+                        + "lost races: {}", modes.size(), eligible, elapsed.toMillis(),
+                eligible * 1000L / Math.max(1, elapsed.toMillis()), sequential.toMillis(),
+                jdbcTemplate.queryForObject("select sum(lost_races) from financing_run", Integer.class));
+
+        assertThat(elapsed.toMillis())
+                .as("overlapping runs against %s times the slowest sequential run", MAX_SLOWDOWN)
+                .isLessThanOrEqualTo((long) (sequential.toMillis() * MAX_SLOWDOWN));
+    }
+
+    /*
+    Reverts the financing of the sequential runs, so that the overlapping runs find all invoices eligible again.
+     */
+    private void unfinance() {
+        jdbcTemplate.update("""
+                update invoice
+                set financing_id = null,
+                    next_eligibility_date = null,
+                    permanently_ineligible = false""");
+        jdbcTemplate.update("delete from financing");
+        jdbcTemplate.update("delete from purchaser_daily_financing");
+        jdbcTemplate.update("delete from creditor_daily_financing");
+        jdbcTemplate.update("delete from financing_run");
+    }
+}
@@ -0,0 +1,80 @@
+package lu.crx.financing.services;
+
+import lu.crx.financing.dtos.FinancingExportFilter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static lu.crx.financing.services.FinancingService.QueryMode.QUERY_FOR_LOWEST_RATE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "financing.export.page-size=3")
+@ActiveProfiles("test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+public class FinancingExportServiceTest {
+
+    @Autowired
+    private SeedingService seedingService;
+
+    @Autowired
+    private FinancingService financingService;
+
+    @Autowired
+    private FinancingExportService financingExportService;
+
+    @BeforeEach
+    public void init() {
+        seedingService.seedMasterData();
+        seedingService.seedInvoices();
+        financingService.finance(QUERY_FOR_LOWEST_RATE);
+    }
+
+    @AfterEach
+    public void empty() {
+        seedingService.emptyDatabase();
+    }
+
+    @Test
+    void shouldExportAllFinancingAcrossPagesAsCsv() throws IOException {
+        var writer = new StringWriter();
+
+        var exported = financingExportService.export(FinancingExportFilter.none(), FinancingExportService.Format.CSV, writer);
+
+        var lines = writer.toString().lines().toList();
+        assertThat(exported).isEqualTo(10);
+        assertThat(lines).hasSize(11);
+        assertThat(lines.getFirst()).isEqualTo(
+                "financing_id,invoice_id,creditor_id,purchaser_id,days_to_finance,financing_rate_in_bps,early_payment_amount_in_cents");
+        assertThat(lines.stream().skip(1).map(line -> Long.parseLong(line.split(",")[1])))
+                .containsExactlyInAnyOrder(1L, 2L, 3L, 6L, 7L, 10L, 11L, 12L, 13L, 14L);
+    }
+
+    @Test
+    void shouldExportFinancingOfPurchaserAsNdjson() throws IOException {
+        var writer = new StringWriter();
+
+        var exported = financingExportService.export(new FinancingExportFilter(3L, null, null, null, null), FinancingExportService.Format.NDJSON, writer);
+
+        var lines = writer.toString().lines().toList();
+        assertThat(exported).isEqualTo(6);
+        assertThat(lines).hasSize(6).allMatch(line -> line.startsWith("{\"financingId\":") && line.endsWith("}"));
+        assertThat(lines).allMatch(line -> line.contains("\"purchaserId\":3,"));
+    }
+
+    @Test
+    void shouldExportFinancingOfCreditor() throws IOException {
+        var writer = new StringWriter();
+
+        var exported = financingExportService.export(new FinancingExportFilter(null, 3L, null, null, null), FinancingExportService.Format.NDJSON, writer);
+
+        assertThat(exported).isEqualTo(4);
+        assertThat(writer.toString().lines()).allMatch(line -> line.contains("\"creditorId\":3,"));
+    }
+}
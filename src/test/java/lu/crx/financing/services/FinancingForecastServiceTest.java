@@ -0,0 +1,132 @@
+package lu.crx.financing.services;
+
+import lu.crx.financing.dtos.DailyFinancingAggregate;
+import lu.crx.financing.performance.PerformanceScenario;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDate;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import static lu.crx.financing.services.FinancingService.QueryMode.QUERY_FOR_LOWEST_RATE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+public class FinancingForecastServiceTest {
+
+    private static final int DAYS = 30;
+
+    @Autowired
+    private SeedingService seedingService;
+
+    @Autowired
+    private FinancingService financingService;
+
+    @Autowired
+    private FinancingAggregateService financingAggregateService;
+
+    @Autowired
+    private FinancingForecastService financingForecastService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    public void empty() {
+        seedingService.emptyDatabase();
+    }
+
+    @Test
+    void shouldForecastTodayAsFinancedByRun() {
+        seedingService.seedMasterData();
+        seedingService.seedInvoices();
+        var today = LocalDate.now();
+
+        var forecast = financingForecastService.forecast(today, DAYS).stream()
+                .filter(aggregate -> aggregate.financingDate().equals(today))
+                .toList();
+        financingService.finance(QUERY_FOR_LOWEST_RATE);
+        var financed = financingAggregateService.getPurchaserAggregates(null, today, today);
+
+        assertThat(forecast).isNotEmpty();
+        assertThat(forecast).hasSameSizeAs(financed);
+        for (var i = 0; i < forecast.size(); i++) {
+            var expected = financed.get(i);
+            assertThat(forecast.get(i))
+                    .usingRecursiveComparison()
+                    .ignoringFields("averageFinancingRateInBps")
+                    .isEqualTo(expected);
+            assertThat(forecast.get(i).averageFinancingRateInBps())
+                    .isCloseTo(expected.averageFinancingRateInBps(), within(0.01));
+        }
+    }
+
+    /*
+    Once today's invoices are financed, every invoice expected on a later day has to be scheduled for that day
+    by the eligibility calendar.
+     */
+    @Test
+    void shouldForecastLaterDaysAsScheduledByEligibilityCalendar() {
+        new PerformanceScenario(20, 10, 30, 5_000, 0).seed(jdbcTemplate);
+        financingService.finance(QUERY_FOR_LOWEST_RATE);
+        var today = LocalDate.now();
+
+        var forecast = financingForecastService.forecast(today, DAYS).stream()
+                .collect(Collectors.groupingBy(DailyFinancingAggregate::financingDate, TreeMap::new,
+                        Collectors.summingLong(DailyFinancingAggregate::invoiceCount)));
+
+        var scheduled = new TreeMap<LocalDate, Long>();
+        jdbcTemplate.query("""
+                        select next_eligibility_date, count(*)
+                        from invoice
+                        where financing_id is null
+                            and next_eligibility_date < dateadd(day, ?, current_date)
+                        group by next_eligibility_date""",
+                rs -> {
+                    scheduled.put(rs.getDate(1).toLocalDate(), rs.getLong(2));
+                },
+                DAYS);
+
+        assertThat(forecast).doesNotContainKey(today);
+        assertThat(scheduled).isNotEmpty();
+        assertThat(forecast).isEqualTo(scheduled);
+    }
+
+    @Test
+    void shouldForecastAnyFirstDay() {
+        new PerformanceScenario(20, 10, 30, 5_000, 0).seed(jdbcTemplate);
+        financingService.finance(QUERY_FOR_LOWEST_RATE);
+        var today = LocalDate.now();
+
+        var fromToday = financingForecastService.forecast(today, DAYS);
+        var fromTomorrow = financingForecastService.forecast(today.plusDays(1), DAYS - 1);
+
+        assertThat(fromTomorrow).isNotEmpty();
+        assertThat(fromTomorrow).isEqualTo(fromToday.stream()
+                .filter(aggregate -> aggregate.financingDate().isAfter(today))
+                .toList());
+    }
+
+    @Test
+    void shouldForecastNothingWithoutInvoices() {
+        seedingService.seedMasterData();
+
+        assertThat(financingForecastService.forecast()).isEmpty();
+    }
+
+    @Test
+    void shouldRejectEmptyHorizon() {
+        assertThatThrownBy(() -> financingForecastService.forecast(LocalDate.now(), 0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,132 @@
+package lu.crx.financing.services;
+
+import lu.crx.financing.dtos.FinancingExportFilter;
+import lu.crx.financing.repositories.InvoiceRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.time.LocalDate;
+import java.time.YearMonth;
+
+import static lu.crx.financing.services.FinancingService.QueryMode.QUERY_FOR_LOWEST_RATE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(properties = "financing.partition.batch-size=4")
+@ActiveProfiles("test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+public class FinancingPartitionServiceTest {
+
+    private static final YearMonth PERIOD = YearMonth.now().minusMonths(2);
+
+    @Autowired
+    private SeedingService seedingService;
+
+    @Autowired
+    private FinancingService financingService;
+
+    @Autowired
+    private FinancingPartitionService financingPartitionService;
+
+    @Autowired
+    private FinancingExportService financingExportService;
+
+    @Autowired
+    private InvoiceArchiveService invoiceArchiveService;
+
+    @Autowired
+    private InvoiceRepository invoiceRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void init() {
+        seedingService.seedMasterData();
+        seedingService.seedInvoices();
+        financingService.finance(QUERY_FOR_LOWEST_RATE);
+
+        // backdating the financing of purchaser 3, so that it belongs to a closed month
+        jdbcTemplate.update("update financing set financing_date = ? where purchaser_id = 3", PERIOD.atDay(15));
+    }
+
+    @AfterEach
+    public void empty() {
+        jdbcTemplate.execute("drop table if exists " + FinancingPartitionService.tableName(PERIOD));
+        jdbcTemplate.execute("drop table if exists " + FinancingPartitionService.tableName(PERIOD) + "_detached");
+        seedingService.emptyDatabase();
+    }
+
+    @Test
+    void shouldMoveFinancingOfClosedMonthToPartitionInBatches() {
+        var moved = financingPartitionService.rollOver(PERIOD);
+
+        assertThat(moved).isEqualTo(6);
+        assertThat(jdbcTemplate.queryForObject("select count(*) from financing", Long.class)).isEqualTo(4);
+        assertThat(jdbcTemplate.queryForObject("select count(*) from " + FinancingPartitionService.tableName(PERIOD)
+                + " where purchaser_id = 3 and creditor_id is not null", Long.class)).isEqualTo(6);
+        assertThat(jdbcTemplate.queryForObject("select count(*) from invoice where financing_id is not null", Long.class))
+                .isEqualTo(10);
+    }
+
+    @Test
+    void shouldLoadInvoiceWithFinancingRolledOverToPartition() {
+        financingPartitionService.rollOver(PERIOD);
+
+        // the entity is loaded and printed within a session, its financing is not initialized
+        var financingId = transactionTemplate.execute(status -> {
+            var invoice = invoiceRepository.findById(1L).orElseThrow();
+            assertThat(invoice.toString()).contains("id=1");
+            return invoice.getFinancing().getId();
+        });
+        var record = invoiceArchiveService.findInvoice(1L).orElseThrow();
+
+        assertThat(record.archived()).isFalse();
+        assertThat(record.financing().id()).isEqualTo(financingId);
+        assertThat(record.financing().purchaserId()).isEqualTo(3L);
+        assertThat(record.financing().financingDate()).isEqualTo(PERIOD.atDay(15));
+    }
+
+    @Test
+    void shouldNotRollOverCurrentMonth() {
+        assertThatThrownBy(() -> financingPartitionService.rollOver(YearMonth.now()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void shouldExportRelevantPartitionsOnly() throws IOException {
+        financingPartitionService.rollOver(PERIOD);
+
+        assertThat(export(FinancingExportFilter.none())).isEqualTo(10);
+        assertThat(export(new FinancingExportFilter(null, null, null, PERIOD.atDay(1), PERIOD.atEndOfMonth()))).isEqualTo(6);
+        assertThat(export(new FinancingExportFilter(null, null, null, LocalDate.now(), LocalDate.now()))).isEqualTo(4);
+        assertThat(financingPartitionService.getPartitions(LocalDate.now(), LocalDate.now())).isEmpty();
+    }
+
+    @Test
+    void shouldNotExportDetachedPartition() throws IOException {
+        financingPartitionService.rollOver(PERIOD);
+
+        financingPartitionService.detach(PERIOD);
+
+        assertThat(export(FinancingExportFilter.none())).isEqualTo(4);
+        assertThat(jdbcTemplate.queryForObject("select count(*) from " + FinancingPartitionService.tableName(PERIOD)
+                + "_detached", Long.class)).isEqualTo(6);
+    }
+
+    private long export(FinancingExportFilter filter) throws IOException {
+        return financingExportService.export(filter, FinancingExportService.Format.CSV, new StringWriter());
+    }
+}
@@ -0,0 +1,124 @@
+package lu.crx.financing.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+public class FinancingPipelineTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    @Test
+    void shouldPassChunksThroughAllStagesInOrder() {
+        var pipeline = new FinancingPipeline<Integer, Integer>(2);
+        var written = new ArrayList<Integer>();
+
+        var total = pipeline.run(
+                chunks -> IntStream.range(0, 5).forEach(chunk -> chunks.accept(List.of(chunk * 2, chunk * 2 + 1))),
+                chunk -> chunk.stream().map(i -> i * 10).toList(),
+                chunk -> {
+                    written.addAll(chunk);
+                    return chunk.size();
+                });
+
+        assertThat(total).isEqualTo(10);
+        assertThat(written).containsExactly(0, 10, 20, 30, 40, 50, 60, 70, 80, 90);
+        assertThat(pipeline.getStages())
+                .extracting(FinancingPipeline.Stage::getName, FinancingPipeline.Stage::getItems,
+                        FinancingPipeline.Stage::getChunks, FinancingPipeline.Stage::getQueueDepth)
+                .containsExactly(
+                        tuple("reader", 10L, 5L, 0),
+                        tuple("compute", 10L, 5L, 0),
+                        tuple("writer", 10L, 5L, 0));
+        assertThat(pipeline.getStages()).allSatisfy(stage -> assertThat(stage.getThroughput()).isPositive());
+    }
+
+    @Test
+    void shouldTakeAboutAsLongAsTheSlowestStage() {
+        var pipeline = new FinancingPipeline<Integer, Integer>(2);
+        var chunks = 10;
+        var stageTime = Duration.ofMillis(50);
+
+        var startedAt = System.nanoTime();
+        pipeline.run(
+                consumer -> IntStream.range(0, chunks).forEach(chunk -> {
+                    LockSupport.parkNanos(stageTime.toNanos());
+                    consumer.accept(List.of(chunk));
+                }),
+                chunk -> {
+                    LockSupport.parkNanos(stageTime.toNanos());
+                    return chunk;
+                },
+                chunk -> {
+                    LockSupport.parkNanos(stageTime.toNanos());
+                    return chunk.size();
+                });
+        var elapsed = Duration.ofNanos(System.nanoTime() - startedAt);
+
+        // sequential stages would take 3 x 10 x 50 ms, the pipeline about (10 + 2) x 50 ms
+        assertThat(elapsed).isLessThan(stageTime.multipliedBy(chunks * 2L));
+        assertThat(pipeline.getStages()).allSatisfy(stage ->
+                assertThat(stage.getBusyTime()).isGreaterThanOrEqualTo(stageTime.multipliedBy(chunks)));
+    }
+
+    @Test
+    void shouldRethrowFailureOfComputeStageWhileReaderIsBlocked() {
+        var pipeline = new FinancingPipeline<Integer, Integer>(1);
+
+        assertTimeoutPreemptively(TIMEOUT, () -> assertThatThrownBy(() -> pipeline.run(
+                chunks -> IntStream.range(0, 1000).forEach(chunk -> chunks.accept(List.of(chunk))),
+                chunk -> {
+                    if (chunk.getFirst() == 3) {
+                        throw new IllegalArgumentException("compute failed");
+                    }
+                    return chunk;
+                },
+                List::size))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("compute failed"));
+    }
+
+    @Test
+    void shouldRethrowFailureOfWriterStageAndStopTheOtherStages() {
+        var pipeline = new FinancingPipeline<Integer, Integer>(1);
+
+        assertTimeoutPreemptively(TIMEOUT, () -> assertThatThrownBy(() -> pipeline.run(
+                chunks -> IntStream.range(0, 1000).forEach(chunk -> chunks.accept(List.of(chunk))),
+                chunk -> chunk,
+                chunk -> {
+                    throw new IllegalStateException("writer failed");
+                }))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("writer failed"));
+        assertThat(pipeline.getStages().getFirst().getItems()).isLessThan(1000);
+    }
+
+    @Test
+    void shouldRethrowFailureOfReaderStage() {
+        var pipeline = new FinancingPipeline<Integer, Integer>(1);
+        var written = new ArrayList<Integer>();
+
+        assertTimeoutPreemptively(TIMEOUT, () -> assertThatThrownBy(() -> pipeline.run(
+                chunks -> {
+                    chunks.accept(List.of(1));
+                    throw new IllegalStateException("reader failed");
+                },
+                chunk -> chunk,
+                chunk -> {
+                    written.addAll(chunk);
+                    return chunk.size();
+                }))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("reader failed"));
+        assertThat(written).containsExactly(1);
+    }
+}
@@ -0,0 +1,153 @@
+package lu.crx.financing.services;
+
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.dtos.FinancingStatistics;
+import lu.crx.financing.performance.PerformanceScenario;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static lu.crx.financing.services.FinancingService.QueryMode.QUERY_FOR_ALL;
+import static lu.crx.financing.services.FinancingService.QueryMode.QUERY_FOR_ALL_PIPELINED;
+import static lu.crx.financing.services.FinancingService.QueryMode.QUERY_FOR_EQUIVALENCE_CLASSES;
+import static lu.crx.financing.services.FinancingService.QueryMode.QUERY_FOR_LOWEST_RATE;
+import static lu.crx.financing.services.FinancingService.QueryMode.QUERY_FOR_LOWEST_RATE_IN_MEMORY;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+public class FinancingPlannerTest {
+
+    @Autowired
+    private SeedingService seedingService;
+
+    @Autowired
+    private FinancingPlanner financingPlanner;
+
+    @Autowired
+    private FinancingProperties financingProperties;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    public void empty() {
+        seedingService.emptyDatabase();
+    }
+
+    @Test
+    void shouldGatherStatisticsOfInvoicesToFinance() {
+        var scenario = new PerformanceScenario(3, 2, 4, 50, 20);
+        scenario.seed(jdbcTemplate);
+        jdbcTemplate.update("update invoice set permanently_ineligible = true where id = 21");
+
+        var statistics = financingPlanner.statistics();
+
+        // the unfinanced invoices of the scenario are 21 to 70, the creditor of x is 1 + x % 3, its maturity 1 + x * 7 % 120 days
+        var eligible = IntStream.rangeClosed(22, 70).boxed().toList();
+        assertThat(statistics).isEqualTo(new FinancingStatistics(
+                49,
+                3,
+                12,
+                eligible.stream().map(x -> x * 7 % 120).distinct().count(),
+                eligible.stream().map(x -> x % 3 + "/" + x * 7 % 120).distinct().count(),
+                70));
+        assertThat(statistics.averageSettingsPerCreditor()).isEqualTo(4);
+        assertThat(statistics.candidates()).isEqualTo(196);
+        assertThat(statistics.financedInvoices()).isEqualTo(21);
+    }
+
+    @Test
+    void shouldGatherEmptyStatisticsWithoutInvoices() {
+        seedingService.seedMasterData();
+
+        var statistics = financingPlanner.statistics();
+
+        assertThat(statistics).isEqualTo(new FinancingStatistics(0, 0, 0, 0, 0, 0));
+        assertThat(statistics.averageSettingsPerCreditor()).isZero();
+    }
+
+    /*
+    Statistics of the FinancingServicePerformanceTest scenarios, the modes are the fastest ones measured.
+     */
+    @Test
+    void shouldPlanFastestModeForStatistics() {
+        var fewClasses = financingPlanner.plan(new FinancingStatistics(1000, 100, 10_000, 120, 600, 11_000));
+        var manyCandidates = financingPlanner.plan(new FinancingStatistics(4000, 100, 10_000, 120, 600, 14_000));
+        var fewCandidates = financingPlanner.plan(new FinancingStatistics(4000, 1000, 10_000, 120, 3000, 14_000));
+
+        assertThat(fewClasses.mode()).isEqualTo(QUERY_FOR_EQUIVALENCE_CLASSES);
+        assertThat(fewClasses.chunkSize()).isEqualTo(1000);
+        assertThat(fewClasses.estimates()).containsOnlyKeys(FinancingService.QueryMode.values());
+        assertThat(fewClasses.estimatedDuration()).isEqualTo(fewClasses.estimates().get(QUERY_FOR_EQUIVALENCE_CLASSES));
+        assertThat(fewClasses.estimates().values()).allSatisfy(estimate ->
+                assertThat(estimate).isGreaterThanOrEqualTo(fewClasses.estimatedDuration()));
+        assertThat(manyCandidates.mode()).isEqualTo(QUERY_FOR_LOWEST_RATE_IN_MEMORY);
+        assertThat(manyCandidates.estimates().get(QUERY_FOR_ALL)).isGreaterThan(manyCandidates.estimatedDuration());
+        assertThat(fewCandidates.mode()).isEqualTo(QUERY_FOR_ALL_PIPELINED);
+        assertThat(fewCandidates.chunkSize()).isEqualTo(1000);
+    }
+
+    @Test
+    void shouldSplitPipelinedModeIntoChunksOfQueueCapacity() {
+        financingProperties.getPlanner().setCosts(Map.of(QUERY_FOR_ALL_PIPELINED, new FinancingProperties.Cost()));
+
+        assertThat(financingPlanner.plan(new FinancingStatistics(1000, 10, 10, 10, 10, 1000)).chunkSize())
+                .isEqualTo(250);
+        assertThat(financingPlanner.plan(new FinancingStatistics(10, 10, 10, 10, 10, 10)).chunkSize())
+                .isEqualTo(financingProperties.getPlanner().getMinChunkSize());
+    }
+
+    @Test
+    void shouldPickChunkSizeWithLowestEstimate() {
+        var cost = new FinancingProperties.Cost();
+        cost.setPerChunk(Duration.ofMillis(15));
+        financingProperties.getPlanner().setCosts(Map.of(QUERY_FOR_LOWEST_RATE, cost));
+
+        var plan = financingPlanner.plan(new FinancingStatistics(1500, 10, 10, 10, 10, 1500));
+
+        // two chunks of 1,000 invoices at most are the cheapest, they are split evenly
+        assertThat(plan.chunkSize()).isEqualTo(750);
+        assertThat(plan.estimatedDuration()).isEqualTo(Duration.ofMillis(30));
+        assertThat(financingPlanner.plan(new FinancingStatistics(50, 10, 10, 10, 10, 50)).chunkSize())
+                .isEqualTo(financingProperties.getPlanner().getMinChunkSize());
+    }
+
+    @Test
+    void shouldFinanceAsPlannedAndRecordChunkSize() {
+        seedingService.seedMasterData();
+        seedingService.seedInvoices();
+        var plan = financingPlanner.plan();
+
+        var run = financingPlanner.finance();
+
+        assertThat(run.getMode()).isEqualTo(plan.mode().name());
+        assertThat(run.getChunkSize()).isEqualTo(plan.chunkSize());
+        assertThat(run.getCompletedAt()).isNotNull();
+        assertThat(run.getFinancedInvoices()).isPositive();
+        assertThat(jdbcTemplate.queryForMap("select mode, chunk_size from financing_run where id = ?", run.getId()))
+                .containsEntry("MODE", plan.mode().name())
+                .containsEntry("CHUNK_SIZE", plan.chunkSize());
+        assertThat(financingPlanner.statistics().unfinancedInvoices())
+                .isLessThan(plan.statistics().unfinancedInvoices());
+    }
+
+    @Test
+    void shouldFailWithoutCostModel() {
+        financingProperties.getPlanner().setCosts(Map.of());
+
+        assertThatThrownBy(() -> financingPlanner.plan())
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("financing.planner.costs");
+    }
+}
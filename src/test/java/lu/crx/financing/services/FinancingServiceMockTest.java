@@ -1,20 +1,30 @@
 package lu.crx.financing.services;
 
+import jakarta.persistence.EntityManager;
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.dtos.EquivalenceClassTuple;
 import lu.crx.financing.dtos.InvoiceTuple;
+import lu.crx.financing.entities.FinancingRun;
 import lu.crx.financing.entities.Invoice;
 import lu.crx.financing.entities.Purchaser;
 import lu.crx.financing.repositories.InvoiceRepository;
 import lu.crx.financing.repositories.PurchaserRepository;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.EnumSource;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.*;
@@ -28,28 +38,70 @@ public class FinancingServiceMockTest {
     @Mock
     private PurchaserRepository purchaserRepository;
 
+    @Mock
+    private QueryPlanService queryPlanService;
+
+    @Mock
+    private FinancingAggregateService financingAggregateService;
+
+    @Mock
+    private FinancingRunService financingRunService;
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private EligibilityCalendarService eligibilityCalendarService;
+
+    @Mock
+    private EquivalenceClassFinancingService equivalenceClassFinancingService;
+
+    @Mock
+    private InvoiceClaimService invoiceClaimService;
+
+    @Mock
+    private PurchaserSelectionEngine purchaserSelectionEngine;
+
+    private final FinancingRun run = FinancingRun.builder()
+            .id(1L)
+            .financingDate(LocalDate.now())
+            .build();
+
+    private final TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+
     private FinancingService financingService;
 
     @BeforeEach
     public void init() {
-        financingService = new FinancingService(invoiceRepository, purchaserRepository);
+        financingService = new FinancingService(invoiceRepository, purchaserRepository, queryPlanService,
+                financingAggregateService, new FinancingProperties(), financingRunService, entityManager, eligibilityCalendarService,
+                equivalenceClassFinancingService, transactionTemplate, invoiceClaimService, purchaserSelectionEngine);
+        when(financingRunService.start(anyString(), anyInt())).thenReturn(run);
+        lenient().when(invoiceClaimService.claim(any())).thenAnswer(invocation -> Set.copyOf(invocation.getArgument(0)));
     }
 
     @ParameterizedTest
     @EnumSource(FinancingService.QueryMode.class)
     void shouldNotSaveWhenInvoicesToFinanceNotFound(FinancingService.QueryMode mode) {
         lenient().when(invoiceRepository.findNotFinancedForLowestRatePurchaser()).thenReturn(List.of());
+        lenient().when(purchaserSelectionEngine.findNotFinancedForLowestRatePurchaser()).thenReturn(List.of());
         lenient().when(invoiceRepository.findNotFinancedForAllPurchasers()).thenReturn(List.of());
+        lenient().when(invoiceRepository.streamNotFinancedForAllPurchasers()).thenReturn(Stream.of());
 
         financingService.finance(mode);
 
         verify(invoiceRepository, never()).findById(anyLong());
         verify(purchaserRepository, never()).findById(anyLong());
-        verify(invoiceRepository, times(1)).saveAll(eq(List.of()));
+        verify(invoiceRepository, never()).saveAll(any());
+        verify(financingAggregateService, times(1)).recordRun(run);
+        verify(equivalenceClassFinancingService, never()).persist(any(), any());
+        verify(eligibilityCalendarService, times(1)).refresh(run);
+        verify(eligibilityCalendarService, times(1)).schedule();
+        verify(financingRunService, times(1)).complete(run, 0);
     }
 
     @ParameterizedTest
-    @EnumSource(FinancingService.QueryMode.class)
+    @EnumSource(value = FinancingService.QueryMode.class, names = "QUERY_FOR_EQUIVALENCE_CLASSES", mode = EnumSource.Mode.EXCLUDE)
     void shouldSaveWhenInvoiceForTheGivenIdIsFound(FinancingService.QueryMode mode) {
         var invoiceId = 1L;
         var purchaserId = 2L;
@@ -63,7 +115,9 @@ public class FinancingServiceMockTest {
         when(invoiceRepository.findById(invoiceId)).thenReturn(Optional.of(invoice));
         when(purchaserRepository.findById(purchaserId)).thenReturn(Optional.of(purchaser));
         lenient().when(invoiceRepository.findNotFinancedForLowestRatePurchaser()).thenReturn(List.of(tuple));
+        lenient().when(purchaserSelectionEngine.findNotFinancedForLowestRatePurchaser()).thenReturn(List.of(tuple));
         lenient().when(invoiceRepository.findNotFinancedForAllPurchasers()).thenReturn(List.of(tuple));
+        lenient().when(invoiceRepository.streamNotFinancedForAllPurchasers()).thenReturn(Stream.of(tuple));
         when(tuple.getInvoiceId()).thenReturn(invoiceId);
         when(tuple.getPurchaserId()).thenReturn(purchaserId);
         when(tuple.getDaysToFinance()).thenReturn(daysToFinance);
@@ -85,13 +139,18 @@ public class FinancingServiceMockTest {
         assertThat(captor.getValue()).hasSize(1);
         assertThat(capturedInvoice.getId()).isEqualTo(invoiceId);
         assertThat(capturedInvoice.getFinancing().getPurchaser().getId()).isEqualTo(purchaserId);
+        assertThat(capturedInvoice.getFinancing().getRun()).isEqualTo(run);
+        assertThat(capturedInvoice.getFinancing().getFinancingDate()).isEqualTo(run.getFinancingDate());
         assertThat(capturedInvoice.getFinancing().getDaysToFinance()).isEqualTo(daysToFinance);
         assertThat(capturedInvoice.getFinancing().getFinancingRateInBps()).isEqualTo(financingRate);
         assertThat(capturedInvoice.getFinancing().getEarlyPaymentAmountInCents()).isEqualTo(earlyPaymentAmount);
+
+        verify(financingAggregateService, times(1)).recordRun(run);
+        verify(financingRunService, times(1)).complete(run, 1);
     }
 
     @ParameterizedTest
-    @EnumSource(FinancingService.QueryMode.class)
+    @EnumSource(value = FinancingService.QueryMode.class, names = "QUERY_FOR_EQUIVALENCE_CLASSES", mode = EnumSource.Mode.EXCLUDE)
     void shouldSaveWhenPurchaserForTheGivenIdIsNotFoundButInvoiceForTheGivenIdIsFound(FinancingService.QueryMode mode) {
         var invoiceId = 1L;
         var purchaserId = 2L;
@@ -104,7 +163,9 @@ public class FinancingServiceMockTest {
         when(invoiceRepository.findById(invoiceId)).thenReturn(Optional.of(invoice));
         when(purchaserRepository.findById(purchaserId)).thenReturn(Optional.empty());
         lenient().when(invoiceRepository.findNotFinancedForLowestRatePurchaser()).thenReturn(List.of(tuple));
+        lenient().when(purchaserSelectionEngine.findNotFinancedForLowestRatePurchaser()).thenReturn(List.of(tuple));
         lenient().when(invoiceRepository.findNotFinancedForAllPurchasers()).thenReturn(List.of(tuple));
+        lenient().when(invoiceRepository.streamNotFinancedForAllPurchasers()).thenReturn(Stream.of(tuple));
         when(tuple.getInvoiceId()).thenReturn(invoiceId);
         when(tuple.getPurchaserId()).thenReturn(purchaserId);
         when(tuple.getDaysToFinance()).thenReturn(daysToFinance);
@@ -131,7 +192,7 @@ public class FinancingServiceMockTest {
     }
 
     @ParameterizedTest
-    @EnumSource(FinancingService.QueryMode.class)
+    @EnumSource(value = FinancingService.QueryMode.class, names = "QUERY_FOR_EQUIVALENCE_CLASSES", mode = EnumSource.Mode.EXCLUDE)
     void shouldNotSaveWhenInvoiceForTheGivenIdIsNotFound(FinancingService.QueryMode mode) {
         var invoiceId = 1L;
         var purchaserId = 2L;
@@ -143,7 +204,9 @@ public class FinancingServiceMockTest {
         when(invoiceRepository.findById(invoiceId)).thenReturn(Optional.empty());
         when(purchaserRepository.findById(purchaserId)).thenReturn(Optional.empty());
         lenient().when(invoiceRepository.findNotFinancedForLowestRatePurchaser()).thenReturn(List.of(tuple));
+        lenient().when(purchaserSelectionEngine.findNotFinancedForLowestRatePurchaser()).thenReturn(List.of(tuple));
         lenient().when(invoiceRepository.findNotFinancedForAllPurchasers()).thenReturn(List.of(tuple));
+        lenient().when(invoiceRepository.streamNotFinancedForAllPurchasers()).thenReturn(Stream.of(tuple));
         when(tuple.getInvoiceId()).thenReturn(invoiceId);
         when(tuple.getPurchaserId()).thenReturn(purchaserId);
         when(tuple.getDaysToFinance()).thenReturn(daysToFinance);
@@ -156,4 +219,58 @@ public class FinancingServiceMockTest {
         verify(purchaserRepository, times(1)).findById(eq(2L));
         verify(invoiceRepository, times(1)).saveAll(List.of());
     }
+
+    @ParameterizedTest
+    @EnumSource(value = FinancingService.QueryMode.class, names = "QUERY_FOR_EQUIVALENCE_CLASSES", mode = EnumSource.Mode.EXCLUDE)
+    void shouldSkipAndRecordInvoiceClaimedByConcurrentRun(FinancingService.QueryMode mode) {
+        var tuple = mock(InvoiceTuple.class);
+
+        lenient().when(invoiceRepository.findNotFinancedForLowestRatePurchaser()).thenReturn(List.of(tuple));
+        lenient().when(purchaserSelectionEngine.findNotFinancedForLowestRatePurchaser()).thenReturn(List.of(tuple));
+        lenient().when(invoiceRepository.findNotFinancedForAllPurchasers()).thenReturn(List.of(tuple));
+        lenient().when(invoiceRepository.streamNotFinancedForAllPurchasers()).thenReturn(Stream.of(tuple));
+        when(tuple.getInvoiceId()).thenReturn(1L);
+        lenient().when(tuple.getPurchaserId()).thenReturn(2L);
+        lenient().when(tuple.getDaysToFinance()).thenReturn(10);
+        lenient().when(tuple.getFinancingRate()).thenReturn(2f);
+        when(tuple.getEarlyPaymentAmount()).thenReturn(19998L);
+        when(invoiceClaimService.claim(List.of(1L))).thenReturn(Set.of());
+
+        financingService.finance(mode);
+
+        verify(invoiceRepository, never()).findById(anyLong());
+        verify(invoiceRepository, times(1)).saveAll(List.of());
+        verify(financingRunService, times(1)).complete(run, 0);
+        assertThat(run.getLostRaces()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldPersistEquivalenceClassesInChunksWithoutLoadingInvoices() {
+        var financingProperties = new FinancingProperties();
+        financingProperties.setChunkSize(3);
+        financingService = new FinancingService(invoiceRepository, purchaserRepository, queryPlanService,
+                financingAggregateService, financingProperties, financingRunService, entityManager, eligibilityCalendarService,
+                equivalenceClassFinancingService, transactionTemplate, invoiceClaimService, purchaserSelectionEngine);
+        var single = equivalenceClass(1L);
+        var pair = equivalenceClass(2L);
+        var large = equivalenceClass(5L);
+
+        when(invoiceRepository.findWinnersOfEquivalenceClasses()).thenReturn(List.of(single, pair, large));
+        when(equivalenceClassFinancingService.persist(List.of(single, pair), run)).thenReturn(3);
+        when(equivalenceClassFinancingService.persist(List.of(large), run)).thenReturn(5);
+
+        financingService.finance(FinancingService.QueryMode.QUERY_FOR_EQUIVALENCE_CLASSES);
+
+        verify(invoiceRepository, never()).findById(anyLong());
+        verify(invoiceRepository, never()).saveAll(any());
+        verify(equivalenceClassFinancingService, times(2)).persist(any(), eq(run));
+        verify(financingAggregateService, times(1)).recordRun(run);
+        verify(financingRunService, times(1)).complete(run, 8);
+    }
+
+    private static EquivalenceClassTuple equivalenceClass(long invoiceCount) {
+        var equivalenceClass = mock(EquivalenceClassTuple.class);
+        when(equivalenceClass.getInvoiceCount()).thenReturn(invoiceCount);
+        return equivalenceClass;
+    }
 }
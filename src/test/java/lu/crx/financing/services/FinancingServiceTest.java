@@ -1,18 +1,28 @@
 package lu.crx.financing.services;
 
 import jakarta.transaction.Transactional;
+import lu.crx.financing.dtos.DailyFinancingAggregate;
 import lu.crx.financing.entities.Invoice;
 import lu.crx.financing.repositories.InvoiceRepository;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.EnumSource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.LocalDate;
+
+import static lu.crx.financing.services.FinancingService.QueryMode.QUERY_FOR_ALL_PIPELINED;
+import static lu.crx.financing.services.FinancingService.QueryMode.QUERY_FOR_EQUIVALENCE_CLASSES;
+import static lu.crx.financing.services.FinancingService.QueryMode.QUERY_FOR_LOWEST_RATE;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 
 @SpringBootTest
 @ActiveProfiles("test")
@@ -28,6 +38,15 @@ public class FinancingServiceTest {
     @Autowired
     private InvoiceRepository invoiceRepository;
 
+    @Autowired
+    private FinancingAggregateService financingAggregateService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
     @BeforeEach
     public void init() {
         seedingService.seedMasterData();
@@ -39,9 +58,12 @@ public class FinancingServiceTest {
         seedingService.emptyDatabase();
     }
 
+    /*
+    The seeded invoices are not committed, so the pipelined mode, reading them in another transaction, is tested apart.
+     */
     @Transactional
     @ParameterizedTest
-    @EnumSource(FinancingService.QueryMode.class)
+    @EnumSource(value = FinancingService.QueryMode.class, names = "QUERY_FOR_ALL_PIPELINED", mode = EnumSource.Mode.EXCLUDE)
     void shouldFinanceInvoiceWithTheLowestFinancingRate(FinancingService.QueryMode mode) {
         financingService.finance(mode);
 
@@ -60,4 +82,74 @@ public class FinancingServiceTest {
         assertThat(invoices.stream().filter(i -> i.getId() == 13).findFirst().orElseThrow().getFinancing().getPurchaser().getId()).isEqualTo(2);
         assertThat(invoices.stream().filter(i -> i.getId() == 14).findFirst().orElseThrow().getFinancing().getPurchaser().getId()).isEqualTo(2);
     }
+
+    @Test
+    void shouldFinanceEquivalenceClassesLikeTheLowestRatePurchaser() {
+        var expected = invoiceRepository.findNotFinancedForLowestRatePurchaser().stream()
+                .map(i -> tuple(i.getInvoiceId(), i.getPurchaserId(), i.getDaysToFinance(), i.getFinancingRate(),
+                        i.getEarlyPaymentAmount()))
+                .toList();
+
+        financingService.finance(QUERY_FOR_EQUIVALENCE_CLASSES);
+
+        var financed = jdbcTemplate.query("""
+                select i.id, f.purchaser_id, f.days_to_finance, f.financing_rate_in_bps, f.early_payment_amount_in_cents
+                from invoice i
+                join financing f on i.financing_id = f.id
+                order by i.id""", (rs, rowNum) -> tuple(rs.getLong(1), rs.getLong(2), rs.getInt(3), rs.getFloat(4),
+                rs.getLong(5)));
+        assertThat(financed).containsExactlyElementsOf(expected);
+        // the financing ids come from the pool of the generator, one per invoice
+        assertThat(jdbcTemplate.queryForObject("select max(id) - min(id) + 1 from financing", Long.class))
+                .isEqualTo(expected.size());
+
+        var today = LocalDate.now();
+        assertThat(financingAggregateService.getPurchaserAggregates(null, today, today))
+                .extracting(DailyFinancingAggregate::ownerId, DailyFinancingAggregate::invoiceCount)
+                .containsExactly(
+                        tuple(1L, 1L),
+                        tuple(2L, 3L),
+                        tuple(3L, 6L));
+        assertThat(financingAggregateService.getCreditorAggregates(null, today, today).stream()
+                .mapToLong(DailyFinancingAggregate::earlyPaymentAmountInCents).sum())
+                .isEqualTo(jdbcTemplate.queryForObject("select sum(early_payment_amount_in_cents) from financing", Long.class));
+    }
+
+    @Test
+    void shouldFinancePipelinedLikeTheLowestRatePurchaser() {
+        var expected = invoiceRepository.findNotFinancedForLowestRatePurchaser().stream()
+                .map(i -> tuple(i.getInvoiceId(), i.getPurchaserId(), i.getEarlyPaymentAmount()))
+                .toList();
+
+        financingService.finance(QUERY_FOR_ALL_PIPELINED);
+
+        assertThat(jdbcTemplate.query("""
+                select i.id, f.purchaser_id, f.early_payment_amount_in_cents
+                from invoice i
+                join financing f on i.financing_id = f.id
+                order by i.id""", (rs, rowNum) -> tuple(rs.getLong(1), rs.getLong(2), rs.getLong(3))))
+                .containsExactlyElementsOf(expected);
+    }
+
+    /*
+    The run is started in a transaction of its own and completed in the one of the financing, a run whose financing
+    rolled back must not be taken for a completed one, e.g. by the eligibility calendar comparing settings fingerprints.
+     */
+    @Test
+    void shouldNotRecordRunAsCompletedWhenFinancingRollsBack() {
+        transactionTemplate.executeWithoutResult(status -> {
+            financingService.finance(QUERY_FOR_LOWEST_RATE);
+            status.setRollbackOnly();
+        });
+
+        assertThat(jdbcTemplate.queryForObject("select count(*) from invoice where financing_id is not null", Integer.class))
+                .isZero();
+        assertThat(jdbcTemplate.queryForList("select completed_at from financing_run")).singleElement()
+                .satisfies(run -> assertThat(run.get("COMPLETED_AT")).isNull());
+
+        financingService.finance(QUERY_FOR_LOWEST_RATE);
+
+        assertThat(jdbcTemplate.queryForObject("select count(*) from financing_run where completed_at is not null",
+                Integer.class)).isEqualTo(1);
+    }
 }
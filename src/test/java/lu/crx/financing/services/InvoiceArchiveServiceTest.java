@@ -0,0 +1,97 @@
+package lu.crx.financing.services;
+
+import lu.crx.financing.dtos.FinancingExportFilter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static lu.crx.financing.services.FinancingService.QueryMode.QUERY_FOR_LOWEST_RATE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {"financing.archive.batch-size=2", "financing.archive.throttle-pause=10ms"})
+@ActiveProfiles("test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+public class InvoiceArchiveServiceTest {
+
+    @Autowired
+    private SeedingService seedingService;
+
+    @Autowired
+    private FinancingService financingService;
+
+    @Autowired
+    private InvoiceArchiveService invoiceArchiveService;
+
+    @Autowired
+    private FinancingExportService financingExportService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void init() {
+        seedingService.seedMasterData();
+        seedingService.seedInvoices();
+        financingService.finance(QUERY_FOR_LOWEST_RATE);
+
+        // invoice 1 has been financed, invoices 4 and 5 have not
+        jdbcTemplate.update("update invoice set maturity_date = dateadd(day, -1, current_date) where id in (1, 4, 5)");
+    }
+
+    @AfterEach
+    public void empty() {
+        seedingService.emptyDatabase();
+    }
+
+    @Test
+    void shouldMoveMaturedInvoicesAndTheirFinancingToArchive() {
+        var archived = invoiceArchiveService.archiveMatured(true);
+
+        assertThat(archived).isEqualTo(3);
+        assertThat(jdbcTemplate.queryForList("select id from invoice", Long.class)).hasSize(12).doesNotContain(1L, 4L, 5L);
+        assertThat(jdbcTemplate.queryForList("select id from invoice_archive", Long.class)).containsExactlyInAnyOrder(1L, 4L, 5L);
+        assertThat(jdbcTemplate.queryForObject("select count(*) from financing", Long.class)).isEqualTo(9);
+        assertThat(jdbcTemplate.queryForList("select invoice_id from financing_archive", Long.class)).containsExactly(1L);
+    }
+
+    @Test
+    void shouldFindArchivedInvoiceWithItsFinancing() {
+        invoiceArchiveService.archiveMatured(false);
+
+        var invoice = invoiceArchiveService.findInvoice(1L).orElseThrow();
+
+        assertThat(invoice.archived()).isTrue();
+        assertThat(invoice.creditorId()).isEqualTo(1L);
+        assertThat(invoice.financing()).isNotNull();
+        assertThat(invoice.financing().purchaserId()).isEqualTo(3L);
+        assertThat(invoiceArchiveService.findInvoice(4L).orElseThrow().financing()).isNull();
+    }
+
+    @Test
+    void shouldFindOpenInvoiceWithItsFinancing() {
+        invoiceArchiveService.archiveMatured(false);
+
+        var invoice = invoiceArchiveService.findInvoice(2L).orElseThrow();
+
+        assertThat(invoice.archived()).isFalse();
+        assertThat(invoice.financing().purchaserId()).isEqualTo(3L);
+        assertThat(invoiceArchiveService.findInvoice(100L)).isEmpty();
+    }
+
+    @Test
+    void shouldKeepArchivedFinancingInExport() throws IOException {
+        invoiceArchiveService.archiveMatured(false);
+
+        var exported = financingExportService.export(FinancingExportFilter.none(), FinancingExportService.Format.CSV, new StringWriter());
+
+        assertThat(exported).isEqualTo(10);
+    }
+}
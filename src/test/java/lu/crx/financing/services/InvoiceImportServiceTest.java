@@ -0,0 +1,140 @@
+package lu.crx.financing.services;
+
+import lu.crx.financing.dtos.InvoiceImportError;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+import static lu.crx.financing.services.FinancingService.QueryMode.QUERY_FOR_LOWEST_RATE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(properties = "financing.invoice-import.batch-size=2")
+@ActiveProfiles("test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+public class InvoiceImportServiceTest {
+
+    @Autowired
+    private SeedingService seedingService;
+
+    @Autowired
+    private InvoiceImportService invoiceImportService;
+
+    @Autowired
+    private FinancingService financingService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @TempDir
+    private Path directory;
+
+    @BeforeEach
+    public void init() {
+        seedingService.seedMasterData();
+    }
+
+    @AfterEach
+    public void empty() {
+        seedingService.emptyDatabase();
+    }
+
+    @Test
+    void shouldImportValidRowsAndReportRejectedOnes() throws IOException {
+        var maturityDate = LocalDate.now().plusDays(30);
+        var file = csv("""
+                creditor,debtor,maturity_date,value_in_cents
+                Coffee Beans LLC,Chocolate Factory,%1$s,200000
+                "Home Brew",,%1$s,300000
+                Nobody,Chocolate Factory,%1$s,100000
+                Beanstalk,Sweets Inc,30.11.2024,100000
+                Beanstalk,Sweets Inc,%1$s,-5
+                Beanstalk,Sweets Inc
+                Beanstalk,ChocoLoco,%1$s,400000
+                """.formatted(maturityDate));
+
+        var result = invoiceImportService.importFile(file);
+
+        assertThat(result.importedInvoices()).isEqualTo(3);
+        assertThat(result.rejectedRows()).isEqualTo(4);
+        assertThat(result.errors()).containsExactly(
+                new InvoiceImportError(4, "Unknown creditor 'Nobody'"),
+                new InvoiceImportError(5, "Invalid maturity date '30.11.2024', expected yyyy-MM-dd"),
+                new InvoiceImportError(6, "Invalid value in cents '-5', expected a positive whole number"),
+                new InvoiceImportError(7, "Expected 4 fields, found 2"));
+
+        assertThat(jdbcTemplate.queryForList("""
+                select concat_ws('|', c.name, coalesce(d.name, '-'), i.maturity_date, i.value_in_cents)
+                from invoice i
+                join creditor c on i.creditor_id = c.id
+                left join debtor d on i.debtor_id = d.id
+                order by i.id""", String.class)).containsExactly(
+                "Coffee Beans LLC|Chocolate Factory|" + maturityDate + "|200000",
+                "Home Brew|-|" + maturityDate + "|300000",
+                "Beanstalk|ChocoLoco|" + maturityDate + "|400000");
+    }
+
+    @Test
+    void shouldRejectFileWithoutHeader() throws IOException {
+        var file = csv("Coffee Beans LLC,Chocolate Factory,2030-01-01,200000\n");
+
+        assertThatThrownBy(() -> invoiceImportService.importFile(file))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(InvoiceImportService.CSV_HEADER);
+        assertThat(jdbcTemplate.queryForObject("select count(*) from invoice", Integer.class)).isZero();
+    }
+
+    @Test
+    void shouldReportAmbiguousCreditor() throws IOException {
+        jdbcTemplate.update("insert into creditor (id, name, max_financing_rate_in_bps) values (1000, 'Beanstalk', 5)");
+        var file = csv("""
+                creditor,debtor,maturity_date,value_in_cents
+                Beanstalk,Sweets Inc,2030-01-01,100000
+                """);
+
+        var result = invoiceImportService.importFile(file);
+
+        assertThat(result.importedInvoices()).isZero();
+        assertThat(result.errors()).containsExactly(
+                new InvoiceImportError(2, "Ambiguous creditor 'Beanstalk', more creditors have that name"));
+    }
+
+    /*
+    The imported invoices take their ids from the same sequence as the entities, seeding the invoices afterward
+    must not clash with them.
+     */
+    @Test
+    void shouldFinanceImportedInvoicesNextToSeededOnes() throws IOException {
+        var maturityDate = LocalDate.now().plusDays(30);
+        var file = csv("""
+                creditor,debtor,maturity_date,value_in_cents
+                Coffee Beans LLC,Chocolate Factory,%1$s,200000
+                Home Brew,Sweets Inc,%1$s,300000
+                Beanstalk,ChocoLoco,%1$s,400000
+                """.formatted(maturityDate));
+
+        invoiceImportService.importFile(file);
+        seedingService.seedInvoices();
+        financingService.finance(QUERY_FOR_LOWEST_RATE);
+
+        assertThat(jdbcTemplate.queryForObject("select count(*) from invoice", Integer.class)).isEqualTo(18);
+        assertThat(jdbcTemplate.queryForObject(
+                "select count(*) from invoice where maturity_date = ? and financing_id is not null", Integer.class,
+                maturityDate)).isPositive();
+    }
+
+    private Path csv(String content) throws IOException {
+        return Files.writeString(directory.resolve("invoices.csv"), content);
+    }
+}
@@ -0,0 +1,88 @@
+package lu.crx.financing.services;
+
+import lu.crx.financing.config.FinancingProperties;
+import lu.crx.financing.dtos.FinancingCandidate;
+import lu.crx.financing.performance.PerformanceScenario;
+import lu.crx.financing.repositories.InvoiceRepository;
+import lu.crx.financing.repositories.PurchaserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+public class PurchaserSelectionEngineTest {
+
+    @Autowired
+    private SeedingService seedingService;
+
+    @Autowired
+    private InvoiceRepository invoiceRepository;
+
+    @Autowired
+    private PurchaserRepository purchaserRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    public void empty() {
+        seedingService.emptyDatabase();
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void shouldSelectSamePurchasersAsLowestRateQueryForSeededInvoices(boolean vectorized) {
+        seedingService.seedMasterData();
+        seedingService.seedInvoices();
+
+        assertSameAsLowestRateQuery(vectorized);
+    }
+
+    /*
+    Scaled down performance scenario, spreading rates, terms and maturities over many combinations,
+    with invoice values exercising the rounding of the early payment amounts.
+     */
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void shouldSelectSamePurchasersAsLowestRateQueryForGeneratedInvoices(boolean vectorized) {
+        new PerformanceScenario(20, 10, 30, 5_000, 0).seed(jdbcTemplate);
+
+        assertSameAsLowestRateQuery(vectorized);
+    }
+
+    @Test
+    void shouldSelectNothingWithoutInvoices() {
+        seedingService.seedMasterData();
+
+        assertThat(engine(true).findNotFinancedForLowestRatePurchaser()).isEmpty();
+    }
+
+    private void assertSameAsLowestRateQuery(boolean vectorized) {
+        var expected = invoiceRepository.findNotFinancedForLowestRatePurchaser().stream()
+                .map(FinancingCandidate::of)
+                .toList();
+
+        var selected = engine(vectorized).findNotFinancedForLowestRatePurchaser().stream()
+                .map(FinancingCandidate::of)
+                .toList();
+
+        assertThat(expected).isNotEmpty();
+        assertThat(selected).containsExactlyElementsOf(expected);
+    }
+
+    private PurchaserSelectionEngine engine(boolean vectorized) {
+        var financingProperties = new FinancingProperties();
+        financingProperties.getSelection().setVectorized(vectorized);
+        return new PurchaserSelectionEngine(invoiceRepository, purchaserRepository, financingProperties);
+    }
+}
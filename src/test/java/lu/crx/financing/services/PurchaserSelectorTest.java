@@ -0,0 +1,79 @@
+package lu.crx.financing.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PurchaserSelectorTest {
+
+    private final PurchaserSelector scalar = PurchaserSelector.create(false);
+
+    private final PurchaserSelector vector = PurchaserSelector.create(true);
+
+    @Test
+    void shouldUseVectorApiAddedByTheBuild() {
+        assertThat(PurchaserSelector.isVectorApiAvailable()).isTrue();
+        assertThat(vector).isInstanceOf(VectorPurchaserSelector.class);
+        assertThat(scalar).isInstanceOf(ScalarPurchaserSelector.class);
+    }
+
+    @Test
+    void shouldSelectFirstEligiblePurchaser() {
+        // rates 10, 20, 30, 40 bps a year with minimum terms 60, 10, 10, 5 days
+        var purchasers = new CreditorPurchasers(new long[]{4, 2, 3, 1}, new int[]{10, 20, 30, 40}, new int[]{60, 10, 10, 5});
+
+        for (var selector : new PurchaserSelector[]{scalar, vector}) {
+            // 30 days at 20 bps is 1.67 bps, purchaser 4 requires 60 days
+            assertThat(selector.select(purchasers, 30, 2)).isEqualTo(1);
+            // 36 days at 30 bps is 3 bps exactly
+            assertThat(selector.select(purchasers, 36, 3)).isEqualTo(1);
+            assertThat(selector.select(purchasers, 90, 3)).isEqualTo(0);
+            assertThat(selector.select(purchasers, 7, 3)).isEqualTo(3);
+            assertThat(selector.select(purchasers, 4, 3)).isEqualTo(-1);
+            assertThat(selector.select(purchasers, 30, 0)).isEqualTo(-1);
+        }
+    }
+
+    /*
+    Any number of purchasers, so that both the full vectors and the masked remainder are covered.
+     */
+    @Test
+    void shouldSelectSamePurchaserAsScalarLoopForAnyNumberOfPurchasers() {
+        var random = new Random(42);
+
+        for (var size = 0; size <= 70; size++) {
+            var rates = random.ints(size, 1, 100).sorted().toArray();
+            var terms = random.ints(size, 0, 60).toArray();
+            var ids = IntStream.range(0, size).mapToLong(i -> i + 1).toArray();
+            var purchasers = new CreditorPurchasers(ids, rates, terms);
+
+            for (var invoice = 0; invoice < 500; invoice++) {
+                var daysToFinance = random.nextInt(-10, 180);
+                var maxRate = random.nextInt(0, 12);
+
+                assertThat(vector.select(purchasers, daysToFinance, maxRate))
+                        .as("%d purchasers, %d days, max rate %d", size, daysToFinance, maxRate)
+                        .isEqualTo(scalar.select(purchasers, daysToFinance, maxRate))
+                        .isEqualTo(reference(rates, terms, daysToFinance, maxRate));
+            }
+        }
+    }
+
+    /*
+    Lowest rate by the floating point formula of the financing queries, the first purchaser on a tie.
+     */
+    private static int reference(int[] rates, int[] terms, int daysToFinance, int maxRate) {
+        var selected = -1;
+        for (var i = 0; i < rates.length; i++) {
+            double rate = (double) (rates[i] * daysToFinance) / 360.0;
+            if (daysToFinance >= terms[i] && rate <= maxRate
+                    && (selected < 0 || rate < (double) (rates[selected] * daysToFinance) / 360.0)) {
+                selected = i;
+            }
+        }
+        return selected;
+    }
+}
@@ -0,0 +1,86 @@
+package lu.crx.financing.services;
+
+import lu.crx.financing.dtos.QueryPlan;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Compares plans of the financing queries with the baselines stored in {@code src/test/resources/query-plans}.
+ * <p>
+ * After an intended plan change, regenerate the baselines with {@code mvn test -Dtest=QueryPlanRegressionTest
+ * -DqueryPlans.updateBaselines=true} and commit them together with the change.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+public class QueryPlanRegressionTest {
+
+    private static final Path BASELINES = Path.of("src", "test", "resources", "query-plans");
+
+    private static final double SCAN_COUNT_FACTOR = 2.0;
+
+    @Autowired
+    private SeedingService seedingService;
+
+    @Autowired
+    private QueryPlanService queryPlanService;
+
+    @BeforeEach
+    public void init() {
+        seedingService.seedMasterData();
+        seedingService.seedInvoices();
+    }
+
+    @AfterEach
+    public void empty() {
+        seedingService.emptyDatabase();
+    }
+
+    @Test
+    void shouldKeepPlansOfFinancingQueries() {
+        var plans = queryPlanService.explainFinancingQueries(Map.of());
+
+        assertThat(plans).isNotEmpty();
+        for (var plan : plans) {
+            assertThat(plan.tableAccesses()).as("table accesses of %s", plan.queryName()).isNotEmpty();
+
+            if (Boolean.getBoolean("queryPlans.updateBaselines")) {
+                queryPlanService.writeBaseline(BASELINES, plan);
+                continue;
+            }
+
+            var baseline = queryPlanService.readBaseline(BASELINES, plan.queryName());
+            assertThat(baseline).as("baseline of %s, run with -DqueryPlans.updateBaselines=true to create it", plan.queryName())
+                    .isPresent();
+            assertThat(queryPlanService.findRegressions(baseline.orElseThrow(), plan, SCAN_COUNT_FACTOR))
+                    .as("regressions of %s against its baseline, plan:%n%s", plan.queryName(), plan.plan())
+                    .isEmpty();
+        }
+    }
+
+    @Test
+    void shouldRejectPlanWithTableAccessItCannotParse() {
+        var plan = """
+                SELECT
+                    I.ID
+                FROM PUBLIC.INVOICE I TABLESAMPLE
+                    /* PUBLIC.INVOICE_FINANCING_ID_IDX: FINANCING_ID IS NULL */
+                    /* scanCount: 16 */
+                """;
+
+        assertThatThrownBy(() -> QueryPlan.parse("sampled", plan))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("FROM PUBLIC.INVOICE I TABLESAMPLE");
+    }
+}
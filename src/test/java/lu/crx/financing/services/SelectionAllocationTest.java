@@ -0,0 +1,203 @@
+package lu.crx.financing.services;
+
+import lombok.extern.slf4j.Slf4j;
+import lu.crx.financing.dtos.FinancingCandidate;
+import lu.crx.financing.dtos.InvoiceTuple;
+import lu.crx.financing.dtos.PendingInvoiceTuple;
+import lu.crx.financing.performance.AllocationMeter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Allocation budgets of the selection of the purchasers on the Java side, in bytes per invoice.
+ * <p>
+ * The candidates are generated up front, so only the allocations of the selection itself are measured. A budget
+ * is exceeded by e.g. boxing introduced in the hot loop or a further stream pipeline per invoice, after an intended
+ * change adjust it in this test, it can be overridden with {@code -Dallocation.budget.<name>=<bytes>} too.
+ * <p>
+ * Measured at the time of writing: selectBestPurchasers 870 bytes (grouping map, lists and streams per invoice),
+ * selectPurchasers 17 bytes (the list of the selected candidates), topOneReducer 118 bytes (a candidate per new best
+ * of an invoice, 2.5 out of 5 projections here, converting every projection would take about 240 bytes),
+ * purchaserSelectionEngine with the scalar and the vector selector 52 bytes (the candidate of every selected invoice
+ * and its slot in the list), 76 bytes when it was compiled by the JIT for the projections of other tests first.
+ */
+@Slf4j
+public class SelectionAllocationTest {
+
+    private static final int INVOICES = 10_000;
+
+    private static final int PURCHASERS = 5;
+
+    private static final int CREDITORS = 100;
+
+    private static final int PURCHASERS_PER_CREDITOR = 20;
+
+    private final List<FinancingCandidate> candidates = candidates();
+
+    @Test
+    void shouldSelectBestPurchasersWithinAllocationBudget() {
+        var invoiceTuples = List.<InvoiceTuple>copyOf(candidates);
+
+        assertWithinBudget("selectBestPurchasers", 1_100,
+                () -> FinancingService.selectBestPurchasers(invoiceTuples));
+    }
+
+    @Test
+    void shouldSelectPurchasersOfPipelineChunkWithinAllocationBudget() {
+        assertWithinBudget("selectPurchasers", 32,
+                () -> FinancingService.selectPurchasers(candidates));
+    }
+
+    /*
+    The bounded-memory mode streams the projections of the repository, which hold boxed values, not candidates.
+     */
+    @Test
+    void shouldReduceStreamedCandidatesWithinAllocationBudget() {
+        var projections = candidates.stream().<InvoiceTuple>map(ProjectedTuple::new).toList();
+
+        assertWithinBudget("topOneReducer", 160, () -> {
+            var reducer = new TopOneReducer(candidate -> {
+            });
+            projections.forEach(reducer);
+            reducer.finish();
+            return reducer;
+        });
+    }
+
+    /*
+    QUERY_FOR_LOWEST_RATE_IN_MEMORY, over the settings loaded once per run and the projections of the invoices.
+     */
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void shouldSelectPurchasersInMemoryWithinAllocationBudget(boolean vectorized) {
+        var selector = PurchaserSelector.create(vectorized);
+        var purchasersByCreditor = creditorPurchasers();
+        var invoices = pendingInvoices();
+
+        assertThat(selector).isInstanceOf(vectorized ? VectorPurchaserSelector.class : ScalarPurchaserSelector.class);
+        assertThat(PurchaserSelectionEngine.select(invoices, purchasersByCreditor, selector)).hasSize(INVOICES);
+        assertWithinBudget("purchaserSelectionEngine", 96,
+                () -> PurchaserSelectionEngine.select(invoices, purchasersByCreditor, selector));
+    }
+
+    private static void assertWithinBudget(String name, long defaultBudget, Supplier<?> selection) {
+        var budget = AllocationMeter.budget(name, defaultBudget);
+        var bytesPerInvoice = AllocationMeter.bytesPerItem(selection, INVOICES);
+
+        log.info("{} allocates {} bytes per invoice (budget {})", name, "%.1f".formatted(bytesPerInvoice), budget);
+
+        assertThat(bytesPerInvoice).as("bytes allocated per invoice by %s", name).isLessThanOrEqualTo(budget);
+    }
+
+    /*
+    Every invoice has a candidate per purchaser, ordered by invoice and purchaser as streamed by the repository,
+    with ids and amounts outside of the cache of the boxed values.
+     */
+    private static List<FinancingCandidate> candidates() {
+        var candidates = new ArrayList<FinancingCandidate>(INVOICES * PURCHASERS);
+        for (var invoice = 0; invoice < INVOICES; invoice++) {
+            for (var purchaser = 0; purchaser < PURCHASERS; purchaser++) {
+                candidates.add(new FinancingCandidate(1_000_000L + invoice, 1_000L + purchaser, 30,
+                        1f + purchaser * 0.1f, 990_000L - (purchaser * 7L + invoice) % 11));
+            }
+        }
+        return candidates;
+    }
+
+    /*
+    Every creditor has settings with PURCHASERS_PER_CREDITOR purchasers, the ones with the lowest rates require
+    terms longer than the invoices, so the selector has to skip a few of them.
+     */
+    private static Map<Long, CreditorPurchasers> creditorPurchasers() {
+        var purchasersByCreditor = new HashMap<Long, CreditorPurchasers>();
+        for (var creditor = 0; creditor < CREDITORS; creditor++) {
+            var purchaserIds = new long[PURCHASERS_PER_CREDITOR];
+            var annualRatesInBps = new int[PURCHASERS_PER_CREDITOR];
+            var minimumTermsInDays = new int[PURCHASERS_PER_CREDITOR];
+            for (var purchaser = 0; purchaser < PURCHASERS_PER_CREDITOR; purchaser++) {
+                purchaserIds[purchaser] = 1_000L + purchaser;
+                annualRatesInBps[purchaser] = 20 + purchaser;
+                minimumTermsInDays[purchaser] = purchaser < 3 ? 200 : 5 + purchaser % 20;
+            }
+            purchasersByCreditor.put(1_000L + creditor,
+                    new CreditorPurchasers(purchaserIds, annualRatesInBps, minimumTermsInDays));
+        }
+        return purchasersByCreditor;
+    }
+
+    private static List<PendingInvoiceTuple> pendingInvoices() {
+        var invoices = new ArrayList<PendingInvoiceTuple>(INVOICES);
+        for (var invoice = 0; invoice < INVOICES; invoice++) {
+            invoices.add(new ProjectedPendingInvoice(1_000_000L + invoice, 1_000L + invoice % CREDITORS,
+                    10_000L + invoice * 7919L % 10_000_000, 10, 30 + invoice % 90));
+        }
+        return invoices;
+    }
+
+    /**
+     * Shape of the rows returned by {@code InvoiceRepository.findNotFinancedForSelection}, see {@link ProjectedTuple}.
+     */
+    private record ProjectedPendingInvoice(Long getInvoiceId, Long getCreditorId, Long getValueInCents,
+                                           Integer getMaxFinancingRateInBps, Integer getDaysToFinance)
+            implements PendingInvoiceTuple {
+    }
+
+    /**
+     * Shape of the rows streamed by {@code InvoiceRepository.streamNotFinancedForAllPurchasers}: an interface projection
+     * holding the boxed values of its row.
+     */
+    private static final class ProjectedTuple implements InvoiceTuple {
+
+        private final Long invoiceId;
+
+        private final Long purchaserId;
+
+        private final Integer daysToFinance;
+
+        private final Float financingRate;
+
+        private final Long earlyPaymentAmount;
+
+        private ProjectedTuple(FinancingCandidate candidate) {
+            this.invoiceId = candidate.invoiceId();
+            this.purchaserId = candidate.purchaserId();
+            this.daysToFinance = candidate.daysToFinance();
+            this.financingRate = candidate.financingRate();
+            this.earlyPaymentAmount = candidate.earlyPaymentAmount();
+        }
+
+        @Override
+        public Long getInvoiceId() {
+            return invoiceId;
+        }
+
+        @Override
+        public Long getPurchaserId() {
+            return purchaserId;
+        }
+
+        @Override
+        public Integer getDaysToFinance() {
+            return daysToFinance;
+        }
+
+        @Override
+        public Float getFinancingRate() {
+            return financingRate;
+        }
+
+        @Override
+        public Long getEarlyPaymentAmount() {
+            return earlyPaymentAmount;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package lu.crx.financing.services;
+
+import lu.crx.financing.dtos.FinancingCandidate;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SpillingCandidateBufferTest {
+
+    @Test
+    void shouldKeepCandidatesInMemoryWithinBudget() {
+        try (var buffer = new SpillingCandidateBuffer(100L * FinancingCandidate.ESTIMATED_SIZE_IN_BYTES)) {
+            LongStream.of(3, 1, 2).forEach(id -> buffer.add(candidate(id)));
+
+            assertThat(buffer.spilledRuns()).isZero();
+            assertThat(ids(buffer)).containsExactly(1L, 2L, 3L);
+        }
+    }
+
+    @Test
+    void shouldMergeSpilledRunsInInvoiceOrder() {
+        try (var buffer = new SpillingCandidateBuffer(4L * FinancingCandidate.ESTIMATED_SIZE_IN_BYTES)) {
+            LongStream.of(9, 2, 7, 4, 1, 8, 3, 10, 6, 5, 11).forEach(id -> buffer.add(candidate(id)));
+
+            assertThat(buffer.size()).isEqualTo(11);
+            assertThat(buffer.spilledRuns()).isEqualTo(2);
+            assertThat(ids(buffer)).containsExactly(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L, 11L);
+            assertThat(buffer.spilledRuns()).isEqualTo(3);
+        }
+    }
+
+    @Test
+    void shouldRestoreAllFieldsOfSpilledCandidates() {
+        var candidate = new FinancingCandidate(42, 7, 30, 2.75f, 97250);
+        try (var buffer = new SpillingCandidateBuffer(0)) {
+            buffer.add(candidate);
+
+            assertThat(buffer.spilledRuns()).isEqualTo(1);
+            assertThat(buffer.iterator().next()).isEqualTo(candidate);
+        }
+    }
+
+    private static FinancingCandidate candidate(long invoiceId) {
+        return new FinancingCandidate(invoiceId, invoiceId % 3, 30, 3f, 9700 + invoiceId);
+    }
+
+    private static ArrayList<Long> ids(SpillingCandidateBuffer buffer) {
+        var ids = new ArrayList<Long>();
+        buffer.iterator().forEachRemaining(candidate -> ids.add(candidate.invoiceId()));
+        return ids;
+    }
+}
@@ -0,0 +1,55 @@
+package lu.crx.financing.services;
+
+import lu.crx.financing.dtos.FinancingCandidate;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class TopOneReducerTest {
+
+    @Test
+    void shouldKeepCandidateWithTheHighestEarlyPaymentAmountPerInvoice() {
+        var reduced = new ArrayList<FinancingCandidate>();
+        var reducer = new TopOneReducer(reduced::add);
+
+        Stream.of(
+                new FinancingCandidate(1, 1, 30, 3f, 9700),
+                new FinancingCandidate(1, 2, 30, 2f, 9800),
+                new FinancingCandidate(1, 3, 30, 2.5f, 9750),
+                new FinancingCandidate(2, 1, 30, 3f, 9700),
+                new FinancingCandidate(3, 2, 30, 1f, 9900)).forEach(reducer);
+        reducer.finish();
+
+        assertThat(reduced).containsExactly(
+                new FinancingCandidate(1, 2, 30, 2f, 9800),
+                new FinancingCandidate(2, 1, 30, 3f, 9700),
+                new FinancingCandidate(3, 2, 30, 1f, 9900));
+    }
+
+    @Test
+    void shouldKeepFirstPurchaserOnTie() {
+        var reduced = new ArrayList<FinancingCandidate>();
+        var reducer = new TopOneReducer(reduced::add);
+
+        reducer.accept(new FinancingCandidate(1, 1, 30, 2f, 9800));
+        reducer.accept(new FinancingCandidate(1, 2, 30, 2.01f, 9800));
+        reducer.finish();
+
+        assertThat(reduced).extracting(FinancingCandidate::purchaserId).containsExactly(1L);
+    }
+
+    @Test
+    void shouldRejectUnorderedCandidates() {
+        var reducer = new TopOneReducer(candidate -> {
+        });
+
+        reducer.accept(new FinancingCandidate(2, 1, 30, 2f, 9800));
+
+        assertThatThrownBy(() -> reducer.accept(new FinancingCandidate(1, 1, 30, 2f, 9800)))
+                .isInstanceOf(IllegalStateException.class);
+    }
+}